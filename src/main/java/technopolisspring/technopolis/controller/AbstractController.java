@@ -1,10 +1,14 @@
 package technopolisspring.technopolis.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.context.request.WebRequest;
 import technopolisspring.technopolis.exception.AuthorizationException;
+import technopolisspring.technopolis.exception.BadRequestException;
 import technopolisspring.technopolis.exception.GlobalExceptionHandler;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
 import technopolisspring.technopolis.model.daos.UserDao;
 import technopolisspring.technopolis.model.dto.UserWithoutPasswordDto;
+import technopolisspring.technopolis.model.pojos.Cursor;
 import technopolisspring.technopolis.utils.ValidationUtil;
 
 import javax.servlet.http.HttpSession;
@@ -16,10 +20,13 @@ public class AbstractController extends GlobalExceptionHandler {
     protected static final String DEFAULT_PAGE = "1";
     public static final String NEED_TO_BE_LOGGED_IN = "Need to be logged in";
     public static final String MUST_BE_ADMIN = "Must be admin";
+    public static final String INVALID_CURSOR = "Invalid cursor";
     @Autowired
     UserDao userDao;
     @Autowired
     ValidationUtil validationUtil;
+    @Autowired
+    CatalogVersions catalogVersions;
 
     protected UserWithoutPasswordDto checkIfUserIsLogged(HttpSession session){
         UserWithoutPasswordDto user = (UserWithoutPasswordDto) session.getAttribute(SESSION_KEY_LOGGED_USER);
@@ -37,4 +44,21 @@ public class AbstractController extends GlobalExceptionHandler {
         return user;
     }
 
+    // an empty cursor asks for the first page
+    protected Cursor checkCursor(String cursor){
+        if(cursor.trim().isEmpty()){
+            return null;
+        }
+        Cursor decoded = Cursor.decode(cursor.trim());
+        if(decoded == null){
+            throw new BadRequestException(INVALID_CURSOR);
+        }
+        return decoded;
+    }
+
+    // sets the etag of the area and tells if the client already has this version, then the caller returns null for a 304
+    protected boolean notModified(WebRequest request, CatalogVersions.Area area){
+        return request.checkNotModified(catalogVersions.etag(area));
+    }
+
 }
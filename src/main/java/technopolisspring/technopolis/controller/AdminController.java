@@ -2,20 +2,44 @@ package technopolisspring.technopolis.controller;
 
 import lombok.SneakyThrows;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import technopolisspring.technopolis.exception.BadRequestException;
 import technopolisspring.technopolis.exception.InvalidArgumentsException;
 import technopolisspring.technopolis.exception.NotFoundException;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
+import technopolisspring.technopolis.model.cache.ProductCache;
+import technopolisspring.technopolis.model.cache.ResponseCache;
 import technopolisspring.technopolis.model.daos.CategoryDao;
 import technopolisspring.technopolis.model.daos.OfferDao;
 import technopolisspring.technopolis.model.daos.ProductDao;
 import technopolisspring.technopolis.model.daos.UserDao;
+import technopolisspring.technopolis.model.dto.CacheStatsDto;
 import technopolisspring.technopolis.model.dto.CreateOfferDto;
 import technopolisspring.technopolis.model.dto.CreateProductDto;
+import technopolisspring.technopolis.model.dto.DescriptionIndexStatsDto;
+import technopolisspring.technopolis.model.dto.ImportReportDto;
+import technopolisspring.technopolis.model.dto.OfferAssignmentReportDto;
+import technopolisspring.technopolis.model.dto.OfferSelectorDto;
+import technopolisspring.technopolis.model.dto.OfferSweepStatsDto;
+import technopolisspring.technopolis.model.dto.OrderLatencyDto;
+import technopolisspring.technopolis.model.dto.ResponseCacheStatsDto;
+import technopolisspring.technopolis.model.index.DescriptionIndex;
 import technopolisspring.technopolis.utils.EmailUtil;
+import technopolisspring.technopolis.utils.ExportUtil;
+import technopolisspring.technopolis.utils.ImportUtil;
+import technopolisspring.technopolis.utils.OfferSweepUtil;
+import technopolisspring.technopolis.utils.OrderLatencyUtil;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 public class AdminController extends AbstractController {
@@ -23,12 +47,18 @@ public class AdminController extends AbstractController {
     private static final String USER_NOT_FOUND = "User not found";
     private static final String INVALID_USER = "Invalid user";
     private static final int MAX_PERCENT = 100;
+    private static final int MAX_OFFER_PRODUCT_IDS = 10000;
+    private static final String TOO_MANY_PRODUCT_IDS = "At most " + MAX_OFFER_PRODUCT_IDS +
+            " product ids can be given at once, select by brand or sub category for more";
     private static final String INVALID_BRAND = "Invalid brand";
     private static final String INVALID_SUB_CATEGORY = "Invalid SubCategory";
     private static final String DOESN_T_EXIST = "Offer or product doesn't exist";
     private static final String INVALID_DISCOUNT_PERCENT = "Discount percent must be between 0 and 100, 0 not included.";
     private static final String INVALID_DESCRIPTION = "Invalid description";
-    private static final String INVALID_PRICE = "Price must a positive number";
+    public static final String INVALID_PRICE = "Price must be a positive number";
+    private static final String INVALID_OFFER = "Invalid offer";
+    private static final String INVALID_SELECTOR = "Select products by exactly one of productIds, brandId or subCategoryId";
+    private static final String INVALID_FORMAT = "Format must be " + ExportUtil.NDJSON + " or " + ExportUtil.CSV;
     @Autowired
     private UserDao userDAO;
     @Autowired
@@ -39,6 +69,20 @@ public class AdminController extends AbstractController {
     private EmailUtil emailUtil;
     @Autowired
     private CategoryDao categoryDao;
+    @Autowired
+    private ProductCache productCache;
+    @Autowired
+    private ResponseCache responseCache;
+    @Autowired
+    private DescriptionIndex descriptionIndex;
+    @Autowired
+    private ExportUtil exportUtil;
+    @Autowired
+    private ImportUtil importUtil;
+    @Autowired
+    private OfferSweepUtil offerSweepUtil;
+    @Autowired
+    private OrderLatencyUtil orderLatencyUtil;
 
     @PutMapping("users/make_admin/{userId}")
     public String makeAdmin(@PathVariable long userId, HttpSession session) throws SQLException {
@@ -72,13 +116,28 @@ public class AdminController extends AbstractController {
         if (description.isEmpty() || validationUtil.invalidDescription(description)) {
             throw new BadRequestException(INVALID_DESCRIPTION);
         }
-        if (createProductDto.getPrice() <= 0) {
+        if (!(createProductDto.getPrice() > 0) || Double.isInfinite(createProductDto.getPrice())) {
             throw new BadRequestException(INVALID_PRICE);
         }
         productDAO.addProduct(createProductDto);
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
         return createProductDto;
     }
 
+    @PostMapping("products/import")
+    public ImportReportDto importProducts(@RequestParam(defaultValue = ExportUtil.NDJSON) String format,
+                                          HttpServletRequest request,
+                                          HttpSession session) throws SQLException, IOException {
+        checkIfUserIsAdmin(session);
+        String importFormat = format.toLowerCase();
+        if (!importFormat.equals(ExportUtil.NDJSON) && !importFormat.equals(ExportUtil.CSV)) {
+            throw new BadRequestException(INVALID_FORMAT);
+        }
+        ImportReportDto report = importUtil.importProducts(importFormat, request.getInputStream());
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
+        return report;
+    }
+
     @SneakyThrows
     @PostMapping("offers")
     public CreateOfferDto addOffer(@RequestBody CreateOfferDto createOfferDto, HttpSession session) {
@@ -101,7 +160,106 @@ public class AdminController extends AbstractController {
         if (!offerDao.addProductToOffer(productId, offerId)){
             throw new BadRequestException(DOESN_T_EXIST);
         }
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
         return ProductController.SUCCESS;
     }
 
+    @PostMapping("offers/{offerId}/products")
+    public OfferAssignmentReportDto addProductsToOffer(@PathVariable long offerId,
+                                                       @RequestBody OfferSelectorDto selector,
+                                                       HttpSession session) throws SQLException {
+        return setOfferOfProducts(offerId, selector, true, session);
+    }
+
+    @DeleteMapping("offers/{offerId}/products")
+    public OfferAssignmentReportDto removeProductsFromOffer(@PathVariable long offerId,
+                                                            @RequestBody OfferSelectorDto selector,
+                                                            HttpSession session) throws SQLException {
+        return setOfferOfProducts(offerId, selector, false, session);
+    }
+
+    private OfferAssignmentReportDto setOfferOfProducts(long offerId, OfferSelectorDto selector, boolean assign,
+                                                        HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        if (selector.getProductIds() == null) {
+            selector.setProductIds(new ArrayList<>());
+        }
+        int selectors = (selector.getProductIds().isEmpty() ? 0 : 1) +
+                (selector.getBrandId() == null ? 0 : 1) +
+                (selector.getSubCategoryId() == null ? 0 : 1);
+        if (selectors != 1) {
+            throw new BadRequestException(INVALID_SELECTOR);
+        }
+        if (selector.getProductIds().size() > MAX_OFFER_PRODUCT_IDS) {
+            throw new BadRequestException(TOO_MANY_PRODUCT_IDS);
+        }
+        for (Long productId : selector.getProductIds()) {
+            if (productId == null || !validationUtil.validId(productId)) {
+                throw new BadRequestException(ProductController.INVALID_ARGUMENTS);
+            }
+        }
+        if (!offerDao.checkForOffer(offerId)) {
+            throw new BadRequestException(INVALID_OFFER);
+        }
+        OfferAssignmentReportDto report = offerDao.setOfferOfProducts(selector, offerId, assign);
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
+        return report;
+    }
+
+    @GetMapping("offers/sweeper")
+    public OfferSweepStatsDto getOfferSweepStats(HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        return offerSweepUtil.getStats();
+    }
+
+    // checkout latency of the synchronous and the asynchronous endpoint, side by side
+    @GetMapping("orders/latency")
+    public List<OrderLatencyDto> getOrderLatency(HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        return orderLatencyUtil.getStats();
+    }
+
+    @GetMapping("products/cache")
+    public CacheStatsDto getProductCacheStats(HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        return productCache.getStats();
+    }
+
+    @GetMapping("products/cache/responses")
+    public ResponseCacheStatsDto getResponseCacheStats(HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        return responseCache.getStats();
+    }
+
+    @GetMapping("products/description/index")
+    public DescriptionIndexStatsDto getDescriptionIndexStats(HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        return descriptionIndex.getStats();
+    }
+
+    @GetMapping("products/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = ExportUtil.NDJSON) String format,
+                                                                HttpSession session) throws SQLException {
+        checkIfUserIsAdmin(session);
+        MediaType mediaType;
+        if (format.equalsIgnoreCase(ExportUtil.NDJSON)) {
+            mediaType = MediaType.parseMediaType("application/x-ndjson");
+        } else if (format.equalsIgnoreCase(ExportUtil.CSV)) {
+            mediaType = MediaType.parseMediaType("text/csv");
+        } else {
+            throw new BadRequestException(INVALID_FORMAT);
+        }
+        String exportFormat = format.toLowerCase();
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products." + exportFormat + "\"")
+                .body(outputStream -> {
+                    try {
+                        exportUtil.exportProducts(exportFormat, outputStream);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+    }
+
 }
@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import technopolisspring.technopolis.exception.BadRequestException;
 import technopolisspring.technopolis.exception.InvalidArgumentsException;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
 import technopolisspring.technopolis.model.daos.AttributeDao;
 import technopolisspring.technopolis.model.daos.CategoryDao;
 import technopolisspring.technopolis.model.daos.ProductDao;
@@ -52,6 +53,7 @@ public class AttributeController extends AbstractController {
             throw new BadRequestException(INVALID_VALUE);
         }
         attributeDao.addAttributeToProduct(attributeToAdd, productId);
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
         return new Attribute(
                 attributeWithoutValueDto.getId(),
                 attributeWithoutValueDto.getName(),
@@ -75,6 +77,7 @@ public class AttributeController extends AbstractController {
         if(!attributeDao.deleteAttribute(attributeId)){
             throw new BadRequestException(INVALID_ATTRIBUTE);
         }
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
         return ProductController.SUCCESS;
     }
 
@@ -109,6 +112,7 @@ public class AttributeController extends AbstractController {
         if(!attributeDao.removeAttributeFromProduct(attributeId, productId)){
             throw new BadRequestException(INVALID_ATTRIBUTE_OR_PRODUCT);
         }
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
         return ProductController.SUCCESS;
     }
 
@@ -6,6 +6,8 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
 import technopolisspring.technopolis.model.daos.CategoryDao;
 
 import java.util.Map;
@@ -18,20 +20,32 @@ public class CategoryController extends AbstractController {
 
     @SneakyThrows
     @GetMapping("categories/page")
-    public Map<Long,String> allCategories(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+    public Map<Long,String> allCategories(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                          WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.CATEGORIES)) {
+            return null;
+        }
         return categoryDAO.getAllCategories(validationUtil.validatePageNumber(pageNumber));
     }
 
     @SneakyThrows
     @GetMapping("categories/{category_id}/page")
     public Map<Long,String> allSubCategoriesById(@PathVariable long category_id,
-                                                 @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+                                                 @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                                 WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.CATEGORIES)) {
+            return null;
+        }
         return categoryDAO.getSubCategories(category_id, validationUtil.validatePageNumber(pageNumber));
     }
 
     @SneakyThrows
     @GetMapping("brands/page")
-    public Map<Long,String> getAllBrands(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+    public Map<Long,String> getAllBrands(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                         WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.BRANDS)) {
+            return null;
+        }
         return categoryDAO.getAllBrands(validationUtil.validatePageNumber(pageNumber));
     }
 
@@ -1,15 +1,25 @@
 package technopolisspring.technopolis.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import technopolisspring.technopolis.exception.BadRequestException;
+import technopolisspring.technopolis.exception.NotFoundException;
 import technopolisspring.technopolis.model.daos.OrderDao;
 import technopolisspring.technopolis.model.daos.ProductDao;
+import technopolisspring.technopolis.model.dto.OrderStatusDto;
 import technopolisspring.technopolis.model.dto.UserWithoutPasswordDto;
+import technopolisspring.technopolis.model.index.CatalogIndex;
+import technopolisspring.technopolis.model.index.TrendingProducts;
 import technopolisspring.technopolis.model.pojos.IProduct;
 import technopolisspring.technopolis.model.pojos.Order;
+import technopolisspring.technopolis.model.pojos.OrderStatus;
+import technopolisspring.technopolis.utils.OrderIntakeUtil;
+import technopolisspring.technopolis.utils.OrderLatencyUtil;
 
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
@@ -21,13 +31,23 @@ public class OrderController extends AbstractController {
     private static final String BASKET_IS_EMPTY = "Basket is empty";
     private static final String INVALID_PRODUCT = "Invalid Product";
     private static final String INVALID_REQUEST = "Invalid request";
+    private static final String TICKET_NOT_FOUND = "Ticket not found";
     @Autowired
     public ProductDao productDAO;
     @Autowired
     public OrderDao orderDao;
+    @Autowired
+    private TrendingProducts trendingProducts;
+    @Autowired
+    private OrderIntakeUtil orderIntakeUtil;
+    @Autowired
+    private CatalogIndex catalogIndex;
+    @Autowired
+    private OrderLatencyUtil orderLatencyUtil;
 
     @PostMapping("/orders")
     public Order addOrder(HttpSession session) throws SQLException {
+        long start = System.nanoTime();
         UserWithoutPasswordDto user = checkIfUserIsLogged(session);
         Map<IProduct, Integer> basket = (Map<IProduct, Integer>) session.getAttribute(SESSION_KEY_BASKET_USER);
         if(basket == null){
@@ -36,9 +56,44 @@ public class OrderController extends AbstractController {
         Order order = new Order(user.getId(), user.getAddress(), basket);
         orderDao.addOrder(order);
         session.removeAttribute(SESSION_KEY_BASKET_USER);
+        orderLatencyUtil.record(OrderLatencyUtil.SYNC, start);
         return order;
     }
 
+    // answers with a ticket once the order is in the journal, the database write follows
+    @PostMapping("orders/async")
+    public ResponseEntity<OrderStatusDto> addOrderAsync(HttpSession session) throws IOException {
+        long start = System.nanoTime();
+        UserWithoutPasswordDto user = checkIfUserIsLogged(session);
+        Map<IProduct, Integer> basket = (Map<IProduct, Integer>) session.getAttribute(SESSION_KEY_BASKET_USER);
+        if(basket == null || basket.isEmpty()){
+            throw new BadRequestException(BASKET_IS_EMPTY);
+        }
+        // a product deleted since it was put in the basket would only fail the order later,
+        // the catalog index knows without asking the database
+        for (IProduct product : basket.keySet()) {
+            if(catalogIndex.get(product.getId()) == null){
+                throw new BadRequestException(INVALID_PRODUCT);
+            }
+        }
+        Order order = new Order(user.getId(), user.getAddress(), basket);
+        long ticket = orderIntakeUtil.submit(order);
+        session.removeAttribute(SESSION_KEY_BASKET_USER);
+        orderLatencyUtil.record(OrderLatencyUtil.ASYNC, start);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new OrderStatusDto(ticket, null, OrderStatus.QUEUED));
+    }
+
+    // the order id is there once the order is written
+    @GetMapping("orders/tickets/{ticket}")
+    public OrderStatusDto getOrderStatus(@PathVariable long ticket, HttpSession session) {
+        UserWithoutPasswordDto user = checkIfUserIsLogged(session);
+        OrderStatusDto status = orderIntakeUtil.getStatus(ticket, user.getId());
+        if(status == null){
+            throw new NotFoundException(TICKET_NOT_FOUND);
+        }
+        return status;
+    }
+
     @PostMapping("orders/products/{product_id}")
     public Map<IProduct, Integer> addProductToBasket(@PathVariable long product_id, HttpSession session) throws SQLException {
         IProduct product = productDAO.getProductById(product_id);
@@ -57,6 +112,7 @@ public class OrderController extends AbstractController {
             basket.put(product,number);
         }
         session.setAttribute(SESSION_KEY_BASKET_USER,basket);
+        trendingProducts.addedToBasket(product_id);
         return basket;
     }
 
@@ -2,16 +2,29 @@ package technopolisspring.technopolis.controller;
 
 import lombok.SneakyThrows;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import technopolisspring.technopolis.exception.BadRequestException;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
+import technopolisspring.technopolis.model.cache.ResponseCache;
 import technopolisspring.technopolis.model.daos.OfferDao;
 import technopolisspring.technopolis.model.daos.ProductDao;
-import technopolisspring.technopolis.model.dto.FilterForProductsDto;
+import technopolisspring.technopolis.model.dto.*;
+import technopolisspring.technopolis.model.index.CoPurchases;
+import technopolisspring.technopolis.model.index.DescriptionIndex;
+import technopolisspring.technopolis.model.index.SimilarProducts;
+import technopolisspring.technopolis.model.index.TrendingProducts;
 import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.ProductSorting;
 
 import javax.servlet.http.HttpSession;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 @RestController
 public class ProductController extends AbstractController {
@@ -20,75 +33,252 @@ public class ProductController extends AbstractController {
     public static final String INVALID_ARGUMENTS = "Invalid arguments";
     public static final String SUCCESS = "Success!";
     private static final String INVALID_DESCRIPTION = "Invalid description";
+    private static final String DEFAULT_SUGGESTIONS = "10";
+    private static final String DEFAULT_SORTING = "id";
+    private static final String DEFAULT_TRENDING = "10";
+    private static final String DEFAULT_ALSO_BOUGHT = "10";
+    private static final String DEFAULT_SIMILAR = "10";
+    private static final String INVALID_SORTING = "Invalid sorting";
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int MAX_IDS = 100;
+    private static final String TOO_MANY_IDS = "At most " + MAX_IDS + " ids can be asked for at once";
     @Autowired
     private ProductDao productDao;
     @Autowired
     private OfferDao offerDao;
+    @Autowired
+    private ResponseCache responseCache;
+    @Autowired
+    private DescriptionIndex descriptionIndex;
+    @Autowired
+    private TrendingProducts trendingProducts;
 
+    @SneakyThrows
     @GetMapping("products/{productId}")
-    public IProduct getProduct(@PathVariable long productId) throws SQLException {
-        IProduct product = productDao.getProductById(productId);
-        if(product == null){
-            throw new BadRequestException(INVALID_PRODUCT);
+    public ResponseEntity<byte[]> getProduct(@PathVariable long productId, WebRequest request) {
+        trendingProducts.viewed(productId);
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
         }
-        return product;
+        return responseCache.serve("products/" + productId, () -> {
+            IProduct product = productDao.getProductById(productId);
+            if(product == null){
+                throw new BadRequestException(INVALID_PRODUCT);
+            }
+            return product;
+        });
     }
 
+    @GetMapping(value = "products", params = "ids")
+    public ProductsByIdsDto getProducts(@RequestParam List<Long> ids, WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        if (ids.size() > MAX_IDS) {
+            throw new BadRequestException(TOO_MANY_IDS);
+        }
+        // an empty element like in ids=1,,2 comes in as null
+        for (Long id : ids) {
+            if (id == null || !validationUtil.validId(id)) {
+                throw new BadRequestException(INVALID_ARGUMENTS);
+            }
+        }
+        List<IProduct> products = productDao.getProductsByIds(ids);
+        Set<Long> found = products.stream().map(IProduct::getId).collect(Collectors.toSet());
+        List<Long> missingIds = ids.stream().distinct().filter(id -> !found.contains(id)).collect(Collectors.toList());
+        return new ProductsByIdsDto(products, missingIds);
+    }
+
+    @SneakyThrows
     @GetMapping("products/page")
-    public List<IProduct> getAllProducts(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber){
-        return productDao.getAllProducts(validationUtil.validatePageNumber(pageNumber));
+    public ResponseEntity<?> getAllProducts(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                            @RequestParam(defaultValue = DEFAULT_SORTING) String sort,
+                                            WebRequest request){
+        ProductSorting sorting = checkSorting(sort);
+        int page = validationUtil.validatePageNumber(pageNumber);
+        return listing("products/page/" + page, sorting, request,
+                () -> productDao.getAllProducts(page, sorting));
+    }
+
+    @GetMapping(value = "products/page", params = "cursor")
+    public ProductPageDto getAllProducts(@RequestParam String cursor,
+                                         @RequestParam(defaultValue = DEFAULT_SORTING) String sort,
+                                         WebRequest request){
+        ProductSorting sorting = checkSorting(sort);
+        if (cacheable(sorting) && notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        return productDao.getAllProducts(checkCursor(cursor), sorting);
     }
 
     @SneakyThrows
     @GetMapping("products/sub_categories/{sub_category_id}/page")
-    public List<IProduct> getAllProductsBySubCategory(@PathVariable long sub_category_id,
-                                                      @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
-        return productDao.getProductsBySubCategory(sub_category_id, validationUtil.validatePageNumber(pageNumber));
+    public ResponseEntity<?> getAllProductsBySubCategory(@PathVariable long sub_category_id,
+                                                         @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                                         @RequestParam(defaultValue = DEFAULT_SORTING) String sort,
+                                                         WebRequest request) {
+        ProductSorting sorting = checkSorting(sort);
+        int page = validationUtil.validatePageNumber(pageNumber);
+        return listing("products/sub_categories/" + sub_category_id + "/page/" + page, sorting, request,
+                () -> productDao.getProductsBySubCategory(sub_category_id, page, sorting));
+    }
+
+    @GetMapping(value = "products/sub_categories/{sub_category_id}/page", params = "cursor")
+    public ProductPageDto getAllProductsBySubCategory(@PathVariable long sub_category_id,
+                                                      @RequestParam String cursor,
+                                                      @RequestParam(defaultValue = DEFAULT_SORTING) String sort,
+                                                      WebRequest request) {
+        ProductSorting sorting = checkSorting(sort);
+        if (cacheable(sorting) && notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        return productDao.getProductsBySubCategory(sub_category_id, checkCursor(cursor), sorting);
     }
 
     @SneakyThrows
     @GetMapping("products/brands/{brandId}/page")
-    public List<IProduct> getAllProductsByBrand(@PathVariable long brandId,
-                                                      @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
-        return productDao.getProductsByBrand(brandId, validationUtil.validatePageNumber(pageNumber));
+    public ResponseEntity<?> getAllProductsByBrand(@PathVariable long brandId,
+                                                   @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                                   @RequestParam(defaultValue = DEFAULT_SORTING) String sort,
+                                                   WebRequest request) {
+        ProductSorting sorting = checkSorting(sort);
+        int page = validationUtil.validatePageNumber(pageNumber);
+        return listing("products/brands/" + brandId + "/page/" + page, sorting, request,
+                () -> productDao.getProductsByBrand(brandId, page, sorting));
+    }
+
+    @GetMapping(value = "products/brands/{brandId}/page", params = "cursor")
+    public ProductPageDto getAllProductsByBrand(@PathVariable long brandId,
+                                                @RequestParam String cursor,
+                                                @RequestParam(defaultValue = DEFAULT_SORTING) String sort,
+                                                WebRequest request) {
+        ProductSorting sorting = checkSorting(sort);
+        if (cacheable(sorting) && notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        return productDao.getProductsByBrand(brandId, checkCursor(cursor), sorting);
     }
 
     @GetMapping("products/description/page")
-    public List<IProduct> lookForProductsByDescription(@RequestParam(required = false) String description,
-                                                       @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
-        if (description == null){
-            throw new BadRequestException(INVALID_DESCRIPTION);
+    public PageDto<IProduct> lookForProductsByDescription(@RequestParam(required = false) String description,
+                                                          @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                                          WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
         }
-        description = description.trim();
-        if (description.isEmpty() || validationUtil.invalidDescription(description)){
-            throw new BadRequestException(INVALID_DESCRIPTION);
+        return productDao.lookForProductsByDescription(checkDescription(description),
+                validationUtil.validatePageNumber(pageNumber));
+    }
+
+    @GetMapping(value = "products/description/page", params = "cursor")
+    public ProductPageDto lookForProductsByDescription(@RequestParam(required = false) String description,
+                                                       @RequestParam String cursor,
+                                                       WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
         }
-        return productDao.lookForProductsByDescription(description, validationUtil.validatePageNumber(pageNumber));
+        return productDao.lookForProductsByDescription(checkDescription(description), checkCursor(cursor));
     }
 
-    @PostMapping("products/filters/page")
-    public List<IProduct> getProductsByPriceRange(@RequestBody FilterForProductsDto filterForProductsDto,
-                                                  @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
-        if (    filterForProductsDto.getMaxPrice() == 0 &&
-                filterForProductsDto.getMinPrice() == 0) {
+    @GetMapping("products/trending")
+    public List<IProduct> getTrendingProducts(@RequestParam(name = "sub_category_id", required = false) Long subCategoryId,
+                                              @RequestParam(defaultValue = DEFAULT_TRENDING) int limit) {
+        if (limit < 1 || limit > TrendingProducts.MAX_TRENDING) {
             throw new BadRequestException(INVALID_ARGUMENTS);
         }
-        if (    filterForProductsDto.getMaxPrice() < 0 ||
-                filterForProductsDto.getMinPrice() < 0) {
+        return productDao.getTrendingProducts(subCategoryId, limit);
+    }
+
+    @GetMapping("products/{productId}/also_bought")
+    public List<IProduct> getAlsoBought(@PathVariable long productId,
+                                        @RequestParam(defaultValue = DEFAULT_ALSO_BOUGHT) int limit) {
+        if (limit < 1 || limit > CoPurchases.MAX_ALSO_BOUGHT) {
             throw new BadRequestException(INVALID_ARGUMENTS);
         }
-        if (filterForProductsDto.getMaxPrice() < filterForProductsDto.getMinPrice()) {
+        return productDao.getAlsoBought(productId, limit);
+    }
+
+    @GetMapping("products/{productId}/similar")
+    public List<IProduct> getSimilarProducts(@PathVariable long productId,
+                                             @RequestParam(defaultValue = DEFAULT_SIMILAR) int limit) {
+        if (limit < 1 || limit > SimilarProducts.MAX_SIMILAR) {
             throw new BadRequestException(INVALID_ARGUMENTS);
         }
-        if (filterForProductsDto.getMinPrice() == 0 && filterForProductsDto.getMaxPrice() == 0){
-            filterForProductsDto.setMaxPrice(Integer.MAX_VALUE);
+        return productDao.getSimilarProducts(productId, limit);
+    }
+
+    @GetMapping("products/suggest")
+    public List<String> suggest(@RequestParam(defaultValue = "") String prefix,
+                                @RequestParam(defaultValue = DEFAULT_SUGGESTIONS) int limit) {
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new BadRequestException(INVALID_ARGUMENTS);
         }
+        return descriptionIndex.suggest(prefix, limit);
+    }
+
+    @PostMapping("products/filters/page")
+    public PageDto<IProduct> getProductsByPriceRange(@RequestBody FilterForProductsDto filterForProductsDto,
+                                                     @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+        checkFilter(filterForProductsDto);
         return productDao.getProductsByPriceRange(filterForProductsDto, validationUtil.validatePageNumber(pageNumber));
     }
 
+    @PostMapping(value = "products/filters/page", params = "cursor")
+    public ProductPageDto getProductsByPriceRange(@RequestBody FilterForProductsDto filterForProductsDto,
+                                                  @RequestParam String cursor) {
+        checkFilter(filterForProductsDto);
+        return productDao.getProductsByPriceRange(filterForProductsDto, checkCursor(cursor));
+    }
+
+    @PostMapping("products/search")
+    public FacetedSearchResultDto searchProducts(@RequestBody SearchProductsDto searchProductsDto,
+                                                 @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+        if (    searchProductsDto.getMaxPrice() < 0 ||
+                searchProductsDto.getMinPrice() < 0) {
+            throw new BadRequestException(INVALID_ARGUMENTS);
+        }
+        if (    searchProductsDto.getMaxPrice() != 0 &&
+                searchProductsDto.getMaxPrice() < searchProductsDto.getMinPrice()) {
+            throw new BadRequestException(INVALID_ARGUMENTS);
+        }
+        if (searchProductsDto.getAttributes() == null) {
+            searchProductsDto.setAttributes(new ArrayList<>());
+        }
+        for (AttributeValueDto attribute : searchProductsDto.getAttributes()) {
+            if (attribute.getValue() == null || validationUtil.invalidDescription(attribute.getValue())) {
+                throw new BadRequestException(INVALID_ARGUMENTS);
+            }
+        }
+        return productDao.searchProducts(searchProductsDto, validationUtil.validatePageNumber(pageNumber));
+    }
+
+    @SneakyThrows
     @GetMapping("offers/page")
-    public List<IProduct> getAllProductsInOffers(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
-        return offerDao.getAllProductsInOffers(pageNumber);
+    public ResponseEntity<byte[]> getAllProductsInOffers(@RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                                         WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        int page = validationUtil.validatePageNumber(pageNumber);
+        return responseCache.serve("offers/page/" + page, () -> offerDao.getAllProductsInOffers(page));
+    }
+
+    @GetMapping(value = "offers/page", params = "cursor")
+    public ProductPageDto getAllProductsInOffers(@RequestParam String cursor, WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        return offerDao.getAllProductsInOffers(checkCursor(cursor));
+    }
+
+    @GetMapping("offers/{offerId}/products")
+    public PageDto<IProduct> getProductsInOffer(@PathVariable long offerId,
+                                                @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber,
+                                                WebRequest request) {
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        return offerDao.getProductsInOffer(offerId, validationUtil.validatePageNumber(pageNumber));
     }
 
     @DeleteMapping("products/{productId}")
@@ -97,7 +287,60 @@ public class ProductController extends AbstractController {
         if (!productDao.deleteProduct(productId)){
             throw new BadRequestException(INVALID_PRODUCT);
         }
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
         return SUCCESS;
     }
 
+    private ProductSorting checkSorting(String sort) {
+        ProductSorting sorting = ProductSorting.parse(sort);
+        if (sorting == null) {
+            throw new BadRequestException(INVALID_SORTING);
+        }
+        return sorting;
+    }
+
+    // best selling moves with every order, which neither bumps the catalog version nor clears cached responses
+    private boolean cacheable(ProductSorting sorting) {
+        return sorting != ProductSorting.BEST_SELLING;
+    }
+
+    private ResponseEntity<?> listing(String key, ProductSorting sorting, WebRequest request,
+                                      Callable<Object> loader) throws Exception {
+        if (!cacheable(sorting)) {
+            return ResponseEntity.ok(loader.call());
+        }
+        if (notModified(request, CatalogVersions.Area.PRODUCTS)) {
+            return null;
+        }
+        return responseCache.serve(key + "/" + sorting.name().toLowerCase(), loader);
+    }
+
+    private String checkDescription(String description) {
+        if (description == null){
+            throw new BadRequestException(INVALID_DESCRIPTION);
+        }
+        description = description.trim();
+        if (description.isEmpty() || validationUtil.invalidDescription(description)){
+            throw new BadRequestException(INVALID_DESCRIPTION);
+        }
+        return description;
+    }
+
+    private void checkFilter(FilterForProductsDto filterForProductsDto) {
+        if (    filterForProductsDto.getMaxPrice() == 0 &&
+                filterForProductsDto.getMinPrice() == 0) {
+            throw new BadRequestException(INVALID_ARGUMENTS);
+        }
+        if (    filterForProductsDto.getMaxPrice() < 0 ||
+                filterForProductsDto.getMinPrice() < 0) {
+            throw new BadRequestException(INVALID_ARGUMENTS);
+        }
+        if (filterForProductsDto.getMaxPrice() < filterForProductsDto.getMinPrice()) {
+            throw new BadRequestException(INVALID_ARGUMENTS);
+        }
+        if (filterForProductsDto.getMinPrice() == 0 && filterForProductsDto.getMaxPrice() == 0){
+            filterForProductsDto.setMaxPrice(Integer.MAX_VALUE);
+        }
+    }
+
 }
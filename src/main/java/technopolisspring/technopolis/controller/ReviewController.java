@@ -9,13 +9,13 @@ import technopolisspring.technopolis.exception.NotFoundException;
 import technopolisspring.technopolis.model.daos.ProductDao;
 import technopolisspring.technopolis.model.daos.ReviewDao;
 import technopolisspring.technopolis.model.dto.EditReviewDto;
+import technopolisspring.technopolis.model.dto.PageDto;
 import technopolisspring.technopolis.model.dto.ReviewOfUserDto;
 import technopolisspring.technopolis.model.dto.UserWithoutPasswordDto;
 import technopolisspring.technopolis.model.pojos.Review;
 
 import javax.servlet.http.HttpSession;
 import java.sql.SQLException;
-import java.util.List;
 
 @RestController
 public class ReviewController extends AbstractController {
@@ -42,8 +42,8 @@ public class ReviewController extends AbstractController {
 
     @SneakyThrows
     @GetMapping("users/reviews/page")
-    public List<ReviewOfUserDto> getReviewsOfUser(HttpSession session,
-                                                  @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+    public PageDto<ReviewOfUserDto> getReviewsOfUser(HttpSession session,
+                                                     @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
         UserWithoutPasswordDto user = checkIfUserIsLogged(session);
         return reviewDao.getReviewsOfUser(user.getId(), validationUtil.validatePageNumber(pageNumber));
     }
@@ -68,13 +68,13 @@ public class ReviewController extends AbstractController {
         if (review.getUserId() != user.getId()){
             throw new BadRequestException(DELETE_YOUR_OWN_REVIEWS);
         }
-        reviewDao.deleteReview(reviewId);
+        reviewDao.deleteReview(review);
         return review;
     }
 
     @GetMapping("products/{productId}/reviews/page")
-    public List<Review> getReviewsOfProduct(@PathVariable long productId,
-                                            @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber){
+    public PageDto<Review> getReviewsOfProduct(@PathVariable long productId,
+                                               @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber){
         return reviewDao.getReviewsOfProduct(productId, validationUtil.validatePageNumber(pageNumber));
     }
 
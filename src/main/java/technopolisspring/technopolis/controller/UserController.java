@@ -8,6 +8,7 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import technopolisspring.technopolis.exception.BadRequestException;
 import technopolisspring.technopolis.exception.InvalidArgumentsException;
+import technopolisspring.technopolis.model.daos.OrderDao;
 import technopolisspring.technopolis.model.daos.ProductDao;
 import technopolisspring.technopolis.model.daos.UserDao;
 import technopolisspring.technopolis.model.dto.*;
@@ -37,6 +38,8 @@ public class UserController extends AbstractController {
     @Autowired
     private ProductDao productDao;
     @Autowired
+    private OrderDao orderDao;
+    @Autowired
     private ValidationUtil validation;
 
 
@@ -145,16 +148,23 @@ public class UserController extends AbstractController {
     }
 
     @GetMapping("users/orders/page")
-    public List<OrderWithoutProductsDto> getOrders(HttpSession session,
-                                                   @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+    public PageDto<OrderWithoutProductsDto> getOrders(HttpSession session,
+                                                      @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
         UserWithoutPasswordDto user = checkIfUserIsLogged(session);
         return userDao.getOrders(user.getId(), validationUtil.validatePageNumber(pageNumber));
     }
 
+    @GetMapping("users/orders/history")
+    public PageDto<OrderWithProductsDto> getOrderHistory(HttpSession session,
+                                                         @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+        UserWithoutPasswordDto user = checkIfUserIsLogged(session);
+        return orderDao.getOrderHistory(user.getId(), validationUtil.validatePageNumber(pageNumber));
+    }
+
     @SneakyThrows
     @GetMapping("users/favorites/page")
-    public List<IProduct> getFavourites(HttpSession session,
-                                        @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
+    public PageDto<IProduct> getFavourites(HttpSession session,
+                                           @RequestParam(defaultValue = DEFAULT_PAGE) int pageNumber) {
         UserWithoutPasswordDto user = checkIfUserIsLogged(session);
         return userDao.getFavourites(user.getId(), validationUtil.validatePageNumber(pageNumber));
     }
@@ -55,6 +55,16 @@ public abstract class GlobalExceptionHandler {
                 e.getClass().getName());
     }
 
+    @ExceptionHandler({ServiceUnavailableException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorDto serviceUnavailable(Exception e){
+        return new ErrorDto(
+                e.getMessage(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now(),
+                e.getClass().getName());
+    }
+
     @ExceptionHandler({HttpMessageNotReadableException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorDto wrongDateFormat(Exception e){
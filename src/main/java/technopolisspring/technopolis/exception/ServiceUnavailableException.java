@@ -0,0 +1,9 @@
+package technopolisspring.technopolis.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    public ServiceUnavailableException(String msg) {
+        super(msg);
+    }
+
+}
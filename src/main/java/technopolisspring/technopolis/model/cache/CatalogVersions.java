@@ -0,0 +1,35 @@
+package technopolisspring.technopolis.model.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// one counter per area of the catalog, used as the etag of everything read from that area
+@Component
+public class CatalogVersions {
+
+    public enum Area {
+        CATEGORIES, BRANDS, PRODUCTS
+    }
+
+    private final Map<Area, AtomicLong> versions = new EnumMap<>(Area.class);
+
+    public CatalogVersions() {
+        // seeded with the start time so tags handed out before a restart never match again
+        long start = System.currentTimeMillis();
+        for (Area area : Area.values()) {
+            versions.put(area, new AtomicLong(start));
+        }
+    }
+
+    public void bump(Area area) {
+        versions.get(area).incrementAndGet();
+    }
+
+    public String etag(Area area) {
+        return "\"" + area.name().toLowerCase() + "-" + versions.get(area).get() + "\"";
+    }
+
+}
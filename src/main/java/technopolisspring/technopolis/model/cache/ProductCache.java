@@ -0,0 +1,71 @@
+package technopolisspring.technopolis.model.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.dto.CacheStatsDto;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+public class ProductCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Long, IProduct> products;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ProductCache(@Value("${technopolis.product-cache.capacity:10000}") int capacity) {
+        this.capacity = capacity;
+        this.products = new LinkedHashMap<Long, IProduct>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, IProduct> eldest) {
+                if (size() > ProductCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized IProduct get(long productId) {
+        IProduct product = products.get(productId);
+        if (product == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return product;
+    }
+
+    // read before loading from the db and pass it to put, so a load that raced with an invalidation is dropped
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public synchronized void put(IProduct product, long loadedAtGeneration) {
+        if (loadedAtGeneration != generation) {
+            return;
+        }
+        products.put(product.getId(), product);
+    }
+
+    public synchronized void invalidate(long productId) {
+        generation++;
+        products.remove(productId);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        products.clear();
+    }
+
+    public synchronized CacheStatsDto getStats() {
+        return new CacheStatsDto(products.size(), capacity, hits, misses, evictions);
+    }
+
+}
@@ -0,0 +1,91 @@
+package technopolisspring.technopolis.model.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.dto.ResponseCacheStatsDto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// already encoded json of catalog responses, an entry is only good while no product changed since it was encoded
+@Component
+public class ResponseCache {
+
+    public static final String CACHE_HEADER = "X-Cache";
+    private static final String HIT = "HIT";
+    private static final String MISS = "MISS";
+
+    @Autowired
+    private ProductCache productCache;
+    @Autowired
+    private ObjectMapper objectMapper;
+    private final int capacity;
+    private final LinkedHashMap<String, CachedResponse> responses;
+    private long hits;
+    private long misses;
+    private long bytesFromCache;
+    private long bytesEncoded;
+
+    public ResponseCache(@Value("${technopolis.response-cache.capacity:1000}") int capacity) {
+        this.capacity = capacity;
+        this.responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > ResponseCache.this.capacity;
+            }
+        };
+    }
+
+    public ResponseEntity<byte[]> serve(String key, Callable<Object> loader) throws Exception {
+        long generation = productCache.getGeneration();
+        byte[] body = get(key, generation);
+        String status = HIT;
+        if (body == null) {
+            body = objectMapper.writeValueAsBytes(loader.call());
+            put(key, body, generation);
+            status = MISS;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(CACHE_HEADER, status)
+                .body(body);
+    }
+
+    public synchronized ResponseCacheStatsDto getStats() {
+        return new ResponseCacheStatsDto(responses.size(), capacity, hits, misses, bytesFromCache, bytesEncoded);
+    }
+
+    private synchronized byte[] get(String key, long generation) {
+        CachedResponse response = responses.get(key);
+        if (response == null || response.generation != generation) {
+            misses++;
+            return null;
+        }
+        hits++;
+        bytesFromCache += response.body.length;
+        return response.body;
+    }
+
+    private synchronized void put(String key, byte[] body, long generation) {
+        bytesEncoded += body.length;
+        responses.put(key, new CachedResponse(body, generation));
+    }
+
+    private static class CachedResponse {
+
+        private final byte[] body;
+        private final long generation;
+
+        private CachedResponse(byte[] body, long generation) {
+            this.body = body;
+            this.generation = generation;
+        }
+
+    }
+
+}
@@ -1,16 +1,29 @@
 package technopolisspring.technopolis.model.daos;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.cache.ProductCache;
 import technopolisspring.technopolis.model.dto.AddAttributeToProductDto;
 import technopolisspring.technopolis.model.dto.AttributeWithoutValueDto;
+import technopolisspring.technopolis.model.index.SimilarProducts;
+import technopolisspring.technopolis.model.pojos.Attribute;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class AttributeDao extends Dao {
 
+    @Autowired
+    ProductCache productCache;
+    @Autowired
+    SimilarProducts similarProducts;
+    private final Map<Long, Map<Long, AttributeWithoutValueDto>> attributesBySubCategory = new ConcurrentHashMap<>();
+
     public List<AttributeWithoutValueDto> getAllAttributes(int pageNumber) throws SQLException {
         String sql = "SELECT id, name, sub_category_id\n" +
                 "FROM technopolis.attributes AS a\n" +
@@ -36,6 +49,8 @@ public class AttributeDao extends Dao {
 
     public void addAttributeToProduct(AddAttributeToProductDto attribute, long productId) throws SQLException {
         if (editAttribute(attribute.getId(), productId, attribute.getValue())){
+            productCache.invalidate(productId);
+            similarProducts.productChanged(productId);
             return;
         }
         String sql = "INSERT INTO `technopolis`.`products_have_attriubtes` " +
@@ -48,6 +63,10 @@ public class AttributeDao extends Dao {
             statement.setString(3, attribute.getValue());
             statement.execute();
         }
+        finally {
+            productCache.invalidate(productId);
+            similarProducts.productChanged(productId);
+        }
     }
 
     public void addAttribute(AttributeWithoutValueDto attribute) throws SQLException {
@@ -63,6 +82,9 @@ public class AttributeDao extends Dao {
             resultSet.next();
             attribute.setId(resultSet.getInt(1));
         }
+        finally {
+            attributesBySubCategory.remove(attribute.getSubCategoryId());
+        }
     }
 
     public boolean deleteAttribute(long attributeId) throws SQLException {
@@ -86,6 +108,9 @@ public class AttributeDao extends Dao {
         finally {
             connection.setAutoCommit(true); // is this really needed?
             connection.close();
+            attributesBySubCategory.clear();
+            productCache.invalidateAll();
+            similarProducts.allChanged();
         }
     }
 
@@ -118,6 +143,10 @@ public class AttributeDao extends Dao {
             statement.setLong(2, productId);
             return statement.executeUpdate() != 0;
         }
+        finally {
+            productCache.invalidate(productId);
+            similarProducts.productChanged(productId);
+        }
     }
 
     public AttributeWithoutValueDto getAttributeByName(String name) throws SQLException {
@@ -139,6 +168,60 @@ public class AttributeDao extends Dao {
         }
     }
 
+    // values come from products_have_attriubtes alone, names from the cached definitions of the sub category
+    public List<Attribute> getAttributesOfProduct(long productId, long subCategoryId) throws SQLException {
+        String sql = "SELECT attribute_id, value\n" +
+                "FROM technopolis.products_have_attriubtes\n" +
+                "WHERE product_id = ?;";
+        Map<Long, String> values = new LinkedHashMap<>();
+        try(Connection connection = jdbcTemplate.getDataSource().getConnection();
+            PreparedStatement statement = connection.prepareStatement(sql)){
+            statement.setLong(1, productId);
+            ResultSet result = statement.executeQuery();
+            while (result.next()){
+                values.put(result.getLong("attribute_id"), result.getString("value"));
+            }
+        }
+        Map<Long, AttributeWithoutValueDto> definitions = getAttributesOfSubCategory(subCategoryId);
+        List<Attribute> attributes = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : values.entrySet()) {
+            AttributeWithoutValueDto definition = definitions.get(entry.getKey());
+            if (definition == null){
+                definition = getAttributeById(entry.getKey());
+            }
+            if (definition == null){
+                continue;
+            }
+            attributes.add(new Attribute(
+                    definition.getId(),
+                    definition.getName(),
+                    definition.getSubCategoryId(),
+                    entry.getValue()
+            ));
+        }
+        return attributes;
+    }
+
+    public Map<Long, AttributeWithoutValueDto> getAttributesOfSubCategory(long subCategoryId) {
+        return attributesBySubCategory.computeIfAbsent(subCategoryId, this::loadAttributesOfSubCategory);
+    }
+
+    private Map<Long, AttributeWithoutValueDto> loadAttributesOfSubCategory(long subCategoryId) {
+        String sql = "SELECT id, name, sub_category_id\n" +
+                "FROM technopolis.attributes\n" +
+                "WHERE sub_category_id = ?;";
+        Map<Long, AttributeWithoutValueDto> attributes = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, preparedStatement -> preparedStatement.setLong(1, subCategoryId), result -> {
+            AttributeWithoutValueDto attribute = new AttributeWithoutValueDto(
+                    result.getLong("id"),
+                    result.getString("name"),
+                    result.getLong("sub_category_id")
+            );
+            attributes.put(attribute.getId(), attribute);
+        });
+        return attributes;
+    }
+
     private boolean editAttribute(long attributeId, long productId, String value) throws SQLException {
         String sql = "UPDATE technopolis.products_have_attriubtes " +
                 "SET value = ? " +
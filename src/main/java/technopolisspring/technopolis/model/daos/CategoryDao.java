@@ -7,7 +7,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 @Component
 public class CategoryDao extends Dao {
@@ -98,4 +100,14 @@ public class CategoryDao extends Dao {
         }
     }
 
+    public Set<Long> getAllBrandIds() {
+        String sql = "SELECT id FROM technopolis.brands;";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class));
+    }
+
+    public Set<Long> getAllSubCategoryIds() {
+        String sql = "SELECT id FROM technopolis.sub_categories;";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class));
+    }
+
 }
@@ -3,6 +3,9 @@ package technopolisspring.technopolis.model.daos;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.dto.PageDto;
+
+import java.util.List;
 
 @Component
 public abstract class Dao {
@@ -11,4 +14,9 @@ public abstract class Dao {
     protected JdbcTemplate jdbcTemplate;
     protected static final int PAGE_SIZE = 20;
 
+    protected <T> PageDto<T> page(List<T> items, int pageNumber, int totalCount) {
+        int totalPages = (totalCount + PAGE_SIZE - 1) / PAGE_SIZE;
+        return new PageDto<>(items, pageNumber, totalCount, totalPages, pageNumber < totalPages);
+    }
+
 }
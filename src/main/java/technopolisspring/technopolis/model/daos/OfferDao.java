@@ -2,17 +2,38 @@ package technopolisspring.technopolis.model.daos;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.cache.ProductCache;
 import technopolisspring.technopolis.model.dto.CreateOfferDto;
+import technopolisspring.technopolis.model.dto.OfferAssignmentReportDto;
+import technopolisspring.technopolis.model.dto.OfferSelectorDto;
+import technopolisspring.technopolis.model.dto.PageDto;
+import technopolisspring.technopolis.model.dto.ProductPageDto;
+import technopolisspring.technopolis.model.index.OfferPricing;
+import technopolisspring.technopolis.model.index.OffersView;
+import technopolisspring.technopolis.model.pojos.Cursor;
 import technopolisspring.technopolis.model.pojos.IProduct;
 
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Component
 public class OfferDao extends Dao {
 
+    private static final int PRODUCTS_PER_UPDATE = 1000;
     @Autowired
     ProductDao productDao;
+    @Autowired
+    ProductCache productCache;
+    @Autowired
+    OfferPricing offerPricing;
+    @Autowired
+    OffersView offersView;
 
     public void addOffer(CreateOfferDto offer) throws SQLException {
         String sql = "INSERT INTO `technopolis`.`offers` " +
@@ -29,22 +50,21 @@ public class OfferDao extends Dao {
             resultSet.next();
             offer.setId(resultSet.getInt(1));
         }
+        offerPricing.offerAdded(offer.getId(), offer.getDiscountPercent(), offer.getStartDate(), offer.getEndDate());
     }
 
-    public List<IProduct> getAllProductsInOffers(int pageNumber){
-        String sql = "SELECT p.id, 'description', price, brand_id, sub_category_id," +
-                " offer_id, discount_percent\n" +
-                "FROM technopolis.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = p.offer_id\n" +
-                "WHERE is_deleted = 0 AND offer_id IS NOT NULL\n" +
-                "LIMIT ?\n" +
-                "OFFSET ?;";
-        return jdbcTemplate.query(sql,
-                preparedStatement -> {
-            preparedStatement.setInt(1, pageNumber * PAGE_SIZE);
-            preparedStatement.setInt(2, pageNumber * PAGE_SIZE - PAGE_SIZE);
-        },
-                (result, i) -> productDao.getProductAccordingToOffer(result));
+    public PageDto<IProduct> getAllProductsInOffers(int pageNumber){
+        return page(offersView.getProducts(pageNumber * PAGE_SIZE - PAGE_SIZE, PAGE_SIZE), pageNumber,
+                offersView.countProducts());
+    }
+
+    public ProductPageDto getAllProductsInOffers(Cursor cursor) {
+        return offersView.getProducts(cursor, PAGE_SIZE);
+    }
+
+    public PageDto<IProduct> getProductsInOffer(long offerId, int pageNumber) {
+        return page(offersView.getProductsInOffer(offerId, pageNumber * PAGE_SIZE - PAGE_SIZE, PAGE_SIZE), pageNumber,
+                offersView.countProductsInOffer(offerId));
     }
 
     public boolean addProductToOffer(long productId, long offerId) throws SQLException {
@@ -55,8 +75,129 @@ public class OfferDao extends Dao {
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, offerId);
             statement.setLong(2, productId);
-            return statement.executeUpdate() != 0;
+            boolean added = statement.executeUpdate() != 0;
+            if (added) {
+                productDao.reindexProduct(productId);
+            }
+            return added;
+        }
+        finally {
+            productCache.invalidate(productId);
+        }
+    }
+
+    public boolean checkForOffer(long offerId) throws SQLException {
+        String sql = "SELECT id\n" +
+                "FROM technopolis.offers\n" +
+                "WHERE id = ?;";
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, offerId);
+            ResultSet result = statement.executeQuery();
+            return result.next();
+        }
+    }
+
+    // the selected products are updated in chunks of ids inside one transaction,
+    // cached prices are dropped once after the commit. removing only touches products that are in the offer
+    public OfferAssignmentReportDto setOfferOfProducts(OfferSelectorDto selector, long offerId,
+                                                       boolean assign) throws SQLException {
+        long start = System.currentTimeMillis();
+        String sql = assign ?
+                "UPDATE `technopolis`.`products` SET `offer_id` = ? WHERE is_deleted = 0 AND `id` IN " :
+                "UPDATE `technopolis`.`products` SET `offer_id` = NULL WHERE `offer_id` = ? AND `id` IN ";
+        List<Long> productIds;
+        int affected = 0;
+        Connection connection = jdbcTemplate.getDataSource().getConnection();
+        try {
+            connection.setAutoCommit(false);
+            productIds = selectProducts(connection, selector);
+            for (int from = 0; from < productIds.size(); from += PRODUCTS_PER_UPDATE) {
+                List<Long> chunk = productIds.subList(from, Math.min(productIds.size(), from + PRODUCTS_PER_UPDATE));
+                String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+                try (PreparedStatement statement = connection.prepareStatement(sql + "(" + placeholders + ");")) {
+                    statement.setLong(1, offerId);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setLong(i + 2, chunk.get(i));
+                    }
+                    affected += statement.executeUpdate();
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        finally {
+            connection.setAutoCommit(true);
+            connection.close();
+        }
+        productCache.invalidateAll();
+        productDao.reindexProducts(productIds);
+        return new OfferAssignmentReportDto(offerId, productIds.size(), affected,
+                System.currentTimeMillis() - start);
+    }
+
+    private List<Long> selectProducts(Connection connection, OfferSelectorDto selector) throws SQLException {
+        if (!selector.getProductIds().isEmpty()) {
+            return new ArrayList<>(new LinkedHashSet<>(selector.getProductIds()));
+        }
+        String sql = "SELECT id FROM `technopolis`.products WHERE is_deleted = 0 AND " +
+                (selector.getBrandId() != null ? "brand_id" : "sub_category_id") + " = ? FOR UPDATE;";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, selector.getBrandId() != null ? selector.getBrandId() : selector.getSubCategoryId());
+            ResultSet result = statement.executeQuery();
+            List<Long> productIds = new ArrayList<>();
+            while (result.next()) {
+                productIds.add(result.getLong("id"));
+            }
+            return productIds;
+        }
+    }
+
+    // <offer id, end date> of the offers that are over but still have products, oldest first
+    public Map<Long, LocalDateTime> getExpiredOffersInUse() {
+        String sql = "SELECT o.id, o.end_date\n" +
+                "FROM technopolis.offers AS o\n" +
+                "WHERE o.end_date <= NOW() AND EXISTS " +
+                "(SELECT 1 FROM technopolis.products AS p WHERE p.offer_id = o.id)\n" +
+                "ORDER BY o.end_date;";
+        Map<Long, LocalDateTime> offers = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, result -> {
+            offers.put(result.getLong("id"), result.getTimestamp("end_date").toLocalDateTime());
+        });
+        return offers;
+    }
+
+    public List<Long> getProductIdsInOffer(long offerId, int limit) {
+        String sql = "SELECT id FROM `technopolis`.products WHERE offer_id = ? LIMIT ?;";
+        return jdbcTemplate.query(sql,
+                preparedStatement -> {
+                    preparedStatement.setLong(1, offerId);
+                    preparedStatement.setInt(2, limit);
+                },
+                (result, i) -> result.getLong("id"));
+    }
+
+    // deleted products are detached too, only the live ones are reindexed
+    public int detachProducts(long offerId, List<Long> productIds) throws SQLException {
+        String placeholders = productIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+        String sql = "UPDATE `technopolis`.`products` SET `offer_id` = NULL " +
+                "WHERE `offer_id` = ? AND `id` IN (" + placeholders + ");";
+        int detached;
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, offerId);
+            for (int i = 0; i < productIds.size(); i++) {
+                statement.setLong(i + 2, productIds.get(i));
+            }
+            detached = statement.executeUpdate();
+        }
+        for (long productId : productIds) {
+            productCache.invalidate(productId);
         }
+        productDao.reindexProducts(productIds);
+        return detached;
     }
 
     public double calculateDiscountedPrice(double price, double discountPercent){
@@ -1,95 +1,270 @@
 package technopolisspring.technopolis.model.daos;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.dto.OrderLineDto;
+import technopolisspring.technopolis.model.dto.OrderWithProductsDto;
+import technopolisspring.technopolis.model.dto.PageDto;
+import technopolisspring.technopolis.model.dto.QueuedOrderDto;
+import technopolisspring.technopolis.model.index.CatalogIndex;
+import technopolisspring.technopolis.model.index.CoPurchases;
+import technopolisspring.technopolis.model.index.ListingCounts;
+import technopolisspring.technopolis.model.index.TrendingProducts;
 import technopolisspring.technopolis.model.pojos.IProduct;
 import technopolisspring.technopolis.model.pojos.Order;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Component
 public class OrderDao extends Dao {
 
+    private static final String ORDER_SQL = "INSERT INTO `technopolis`.`orders` " +
+            "(`user_id`, `address`, `price`) " +
+            "VALUES (?, ?, ?);";
+    private static final String ORDER_PRODUCTS_SQL = "INSERT INTO `technopolis`.`orders_have_products` " +
+            "(`product_id`, `order_id`, `quantity`) " +
+            "VALUES (?, ?, ?);";
+    private static final String NO_GENERATED_ID = "No id was generated for the order";
+    private static final int MAX_TICKETS_PER_QUERY = 1000;
+
     @Autowired
     ProductDao productDAO;
+    @Autowired
+    ListingCounts listingCounts;
+    @Autowired
+    CatalogIndex catalogIndex;
+    @Autowired
+    TrendingProducts trendingProducts;
+    @Autowired
+    CoPurchases coPurchases;
 
     public void addOrder(Order order) throws SQLException {
-        String orderSql = "INSERT INTO `technopolis`.`orders` " +
-                "(`user_id`, `address`, `price`) " +
-                "VALUES (?, ?, ?);";
-        String orderProductsSql = "INSERT INTO `technopolis`.`orders_have_products` " +
-                "(`product_id`, `order_id`, `quantity`) " +
-                "VALUES (?, ?, ?);";
         Connection connection = jdbcTemplate.getDataSource().getConnection();
-        try (PreparedStatement orderStatement = connection.prepareStatement(orderSql, Statement.RETURN_GENERATED_KEYS);
-             PreparedStatement orderProductsStatement = connection.prepareStatement(orderProductsSql)) {
+        QueuedOrderDto written;
+        try (PreparedStatement orderStatement = connection.prepareStatement(ORDER_SQL, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement orderProductsStatement = connection.prepareStatement(ORDER_PRODUCTS_SQL)) {
             connection.setAutoCommit(false);
             orderStatement.setLong(1, order.getUserId());
             orderStatement.setString(2, order.getAddress());
             orderStatement.setDouble(3, order.getPrice());
-            orderStatement.execute();
-            ResultSet resultSet = orderStatement.getGeneratedKeys();
-            if(!resultSet.next()){
-                return;
-            }
-            order.setId(resultSet.getInt(1));
-            for (Map.Entry<IProduct, Integer> entry : order.getProducts().entrySet()) {
-                orderProductsStatement.setLong(1, entry.getKey().getId());
-                orderProductsStatement.setLong(2, order.getId());
-                orderProductsStatement.setInt(3, entry.getValue());
-                orderProductsStatement.execute();
+            orderStatement.executeUpdate();
+            ResultSet keys = orderStatement.getGeneratedKeys();
+            if (!keys.next()) {
+                throw new SQLException(NO_GENERATED_ID);
             }
+            order.setId(keys.getLong(1));
+            written = toQueuedOrder(order);
+            addLines(orderProductsStatement, written);
+            orderProductsStatement.executeBatch();
             connection.commit();
         } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        finally {
             connection.setAutoCommit(true);
+            connection.close();
+        }
+        ordersWritten(Collections.singletonList(written));
+    }
+
+    // orders taken by the intake, in one transaction with a jdbc batch per table, which the driver rewrites
+    // into multi-row inserts. the headers get their generated ids here, the tickets record which order
+    // each ticket became so a retry or a replay can tell what is already written
+    public void addQueuedOrders(List<QueuedOrderDto> orders) throws SQLException {
+        String ticketSql = "INSERT INTO `technopolis`.`order_tickets` (`ticket`, `order_id`) VALUES (?, ?);";
+        Connection connection = jdbcTemplate.getDataSource().getConnection();
+        try (PreparedStatement orderStatement = connection.prepareStatement(ORDER_SQL, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement orderProductsStatement = connection.prepareStatement(ORDER_PRODUCTS_SQL);
+             PreparedStatement ticketStatement = connection.prepareStatement(ticketSql)) {
+            connection.setAutoCommit(false);
+            for (QueuedOrderDto order : orders) {
+                orderStatement.setLong(1, order.getUserId());
+                orderStatement.setString(2, order.getAddress());
+                orderStatement.setDouble(3, order.getPrice());
+                orderStatement.addBatch();
+            }
+            orderStatement.executeBatch();
+            ResultSet keys = orderStatement.getGeneratedKeys();
+            for (QueuedOrderDto order : orders) {
+                if (!keys.next()) {
+                    throw new SQLException(NO_GENERATED_ID);
+                }
+                order.setId(keys.getLong(1));
+                addLines(orderProductsStatement, order);
+                ticketStatement.setLong(1, order.getTicket());
+                ticketStatement.setLong(2, order.getId());
+                ticketStatement.addBatch();
+            }
+            orderProductsStatement.executeBatch();
+            ticketStatement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
             connection.rollback();
             throw e;
         }
         finally {
+            connection.setAutoCommit(true);
             connection.close();
         }
+        ordersWritten(orders);
     }
 
-    public Order getOrderById(long orderId) throws SQLException {
-        String sql = "SELECT id, user_id, address, price\n" +
-                "FROM technopolis.orders\n" +
-                "WHERE id = ?;";
-        try (Connection connection = jdbcTemplate.getDataSource().getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setLong(1, orderId);
-            ResultSet result = statement.executeQuery();
-            if(!result.next()){
-                return null;
+    // the tables the intake needs besides the orders, created on first start
+    public void createTicketTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS `technopolis`.`order_ticket_sequence` (" +
+                "`id` TINYINT NOT NULL PRIMARY KEY, `next_ticket` BIGINT NOT NULL);");
+        jdbcTemplate.execute("INSERT IGNORE INTO `technopolis`.`order_ticket_sequence` " +
+                "(`id`, `next_ticket`) VALUES (1, 1);");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS `technopolis`.`order_tickets` (" +
+                "`ticket` BIGINT NOT NULL PRIMARY KEY, `order_id` BIGINT NOT NULL);");
+    }
+
+    // the first of count tickets nobody else gets, in one statement on one connection
+    public long reserveTickets(int count) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE `technopolis`.`order_ticket_sequence` " +
+                    "SET next_ticket = LAST_INSERT_ID(next_ticket + ?) WHERE id = 1;")) {
+                statement.setInt(1, count);
+                statement.executeUpdate();
+            }
+            try (Statement statement = connection.createStatement()) {
+                ResultSet result = statement.executeQuery("SELECT LAST_INSERT_ID();");
+                result.next();
+                return result.getLong(1) - count;
+            }
+        });
+    }
+
+    // <ticket, order id> of the tickets that are already written
+    public Map<Long, Long> getOrderIdsByTickets(Collection<Long> tickets) {
+        Map<Long, Long> orderIds = new HashMap<>();
+        List<Long> all = new ArrayList<>(tickets);
+        for (int from = 0; from < all.size(); from += MAX_TICKETS_PER_QUERY) {
+            List<Long> chunk = all.subList(from, Math.min(all.size(), from + MAX_TICKETS_PER_QUERY));
+            String placeholders = chunk.stream().map(ticket -> "?").collect(Collectors.joining(", "));
+            jdbcTemplate.query("SELECT ticket, order_id FROM `technopolis`.order_tickets " +
+                            "WHERE ticket IN (" + placeholders + ");",
+                    chunk.toArray(),
+                    result -> {
+                        orderIds.put(result.getLong("ticket"), result.getLong("order_id"));
+                    });
+        }
+        return orderIds;
+    }
+
+    public QueuedOrderDto toQueuedOrder(Order order) {
+        Map<Long, Integer> lines = new HashMap<>();
+        for (Map.Entry<IProduct, Integer> entry : order.getProducts().entrySet()) {
+            lines.merge(entry.getKey().getId(), entry.getValue(), Integer::sum);
+        }
+        return new QueuedOrderDto(0, order.getId(), order.getUserId(), order.getAddress(), order.getPrice(), lines);
+    }
+
+    // null when there is no such order
+    public Long getOrderOwner(long orderId) {
+        String sql = "SELECT user_id FROM `technopolis`.orders WHERE id = ?;";
+        List<Long> owners = jdbcTemplate.query(sql, preparedStatement -> preparedStatement.setLong(1, orderId),
+                (result, i) -> result.getLong("user_id"));
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
+    private void addLines(PreparedStatement orderProductsStatement, QueuedOrderDto order) throws SQLException {
+        for (Map.Entry<Long, Integer> line : order.getLines().entrySet()) {
+            orderProductsStatement.setLong(1, line.getKey());
+            orderProductsStatement.setLong(2, order.getId());
+            orderProductsStatement.setInt(3, line.getValue());
+            orderProductsStatement.addBatch();
+        }
+    }
+
+    private void ordersWritten(List<QueuedOrderDto> orders) {
+        for (QueuedOrderDto order : orders) {
+            listingCounts.orderAdded(order.getUserId());
+            for (Map.Entry<Long, Integer> line : order.getLines().entrySet()) {
+                catalogIndex.addSales(line.getKey(), line.getValue());
+                trendingProducts.ordered(line.getKey(), line.getValue());
             }
-            return new Order(
-                    result.getLong("id"),
-                    result.getLong("user_id"),
-                    result.getString("address"),
-                    getOrderProducts(orderId)
-            );
+            coPurchases.ordered(order.getId(), order.getLines().keySet());
         }
     }
 
-    public Map<IProduct, Integer> getOrderProducts(long orderId) throws SQLException {
-        String sql = "SELECT product_id, order_id, quantity, discount_percent, offer_id\n" +
+    // <product id, units sold>
+    public Map<Long, Long> getSalesByProduct() {
+        String sql = "SELECT product_id, SUM(quantity) AS sold\n" +
                 "FROM technopolis.orders_have_products\n" +
-                "JOIN technopolis.products AS p ON product_id = p.id\n" +
-                "LEFT JOIN technopolis.offers AS o ON o.id = p.offer_id\n" +
-                "WHERE order_id = ?;";
+                "GROUP BY product_id;";
+        Map<Long, Long> sales = new HashMap<>();
+        jdbcTemplate.query(sql, result -> {
+            sales.put(result.getLong("product_id"), result.getLong("sold"));
+        });
+        return sales;
+    }
+
+    // header and lines come back in one query on one connection
+    public Order getOrderById(long orderId) throws SQLException {
+        String sql = "SELECT o.id AS order_id, o.user_id, o.address, ohp.quantity,\n" +
+                "p.id, p.description, p.price, p.brand_id, p.sub_category_id, p.offer_id\n" +
+                "FROM technopolis.orders AS o\n" +
+                "LEFT JOIN technopolis.orders_have_products AS ohp ON ohp.order_id = o.id\n" +
+                "LEFT JOIN technopolis.products AS p ON p.id = ohp.product_id\n" +
+                "WHERE o.id = ?;";
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, orderId);
             ResultSet result = statement.executeQuery();
-            Map<IProduct, Integer> products = new HashMap<>();
-            while (result.next()){
-                products.put(
-                        productDAO.getProductAccordingToOffer(result), result.getInt("quantity")
-                );
+            if (!result.next()) {
+                return null;
             }
-            return products;
+            long userId = result.getLong("user_id");
+            String address = result.getString("address");
+            Map<IProduct, Integer> products = new HashMap<>();
+            do {
+                if (result.getLong("p.id") != 0) {
+                    products.put(productDAO.getProductAccordingToOffer(result), result.getInt("quantity"));
+                }
+            } while (result.next());
+            return new Order(orderId, userId, address, products);
         }
     }
 
+    // a page of the user's orders, newest first, with their lines joined onto the page of headers
+    public PageDto<OrderWithProductsDto> getOrderHistory(long userId, int pageNumber) {
+        String sql = "SELECT o.id AS order_id, o.address, o.price AS order_price, ohp.quantity,\n" +
+                "p.id, p.description, p.price, p.brand_id, p.sub_category_id, p.offer_id\n" +
+                "FROM (SELECT id, address, price FROM technopolis.orders " +
+                "WHERE user_id = ? ORDER BY id DESC LIMIT ? OFFSET ?) AS o\n" +
+                "LEFT JOIN technopolis.orders_have_products AS ohp ON ohp.order_id = o.id\n" +
+                "LEFT JOIN technopolis.products AS p ON p.id = ohp.product_id\n" +
+                "ORDER BY o.id DESC;";
+        List<OrderWithProductsDto> orders = new ArrayList<>();
+        jdbcTemplate.query(sql,
+                preparedStatement -> {
+                    preparedStatement.setLong(1, userId);
+                    preparedStatement.setInt(2, PAGE_SIZE);
+                    preparedStatement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
+                },
+                result -> {
+                    long orderId = result.getLong("order_id");
+                    if (orders.isEmpty() || orders.get(orders.size() - 1).getId() != orderId) {
+                        orders.add(new OrderWithProductsDto(orderId, userId, result.getString("address"),
+                                result.getDouble("order_price"), new ArrayList<>()));
+                    }
+                    if (result.getLong("p.id") != 0) {
+                        orders.get(orders.size() - 1).getLines().add(new OrderLineDto(
+                                productDAO.getProductAccordingToOffer(result), result.getInt("quantity")));
+                    }
+                });
+        return page(orders, pageNumber, listingCounts.countOrders(userId));
+    }
+
 }
@@ -1,31 +1,79 @@
 package technopolisspring.technopolis.model.daos;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.cache.ProductCache;
 import technopolisspring.technopolis.model.dto.*;
+import technopolisspring.technopolis.model.index.CatalogIndex;
+import technopolisspring.technopolis.model.index.CatalogQuery;
+import technopolisspring.technopolis.model.index.CoPurchases;
+import technopolisspring.technopolis.model.index.DescriptionIndex;
+import technopolisspring.technopolis.model.index.ListingCounts;
+import technopolisspring.technopolis.model.index.OfferPricing;
+import technopolisspring.technopolis.model.index.RankedHits;
+import technopolisspring.technopolis.model.index.SearchHit;
+import technopolisspring.technopolis.model.index.SearchSnapshot;
+import technopolisspring.technopolis.model.index.SimilarProducts;
+import technopolisspring.technopolis.model.index.TrendingProducts;
 import technopolisspring.technopolis.model.pojos.Attribute;
+import technopolisspring.technopolis.model.pojos.Cursor;
 import technopolisspring.technopolis.model.pojos.IProduct;
 import technopolisspring.technopolis.model.pojos.IProductWithAttributes;
 import technopolisspring.technopolis.model.pojos.Product;
+import technopolisspring.technopolis.model.pojos.ProductSorting;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @Component
 public class ProductDao extends Dao {
 
+    private static final int[] PRICE_RANGES = {50, 100, 250, 500, 1000, 2500};
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    private static final int EXPORT_FETCH_SIZE = Integer.MIN_VALUE; // makes Connector/J stream the rows one by one
     @Autowired
     OfferDao offerDao;
+    @Autowired
+    AttributeDao attributeDao;
+    @Autowired
+    ProductCache productCache;
+    @Autowired
+    DescriptionIndex descriptionIndex;
+    @Autowired
+    CatalogIndex catalogIndex;
+    @Autowired
+    ListingCounts listingCounts;
+    @Autowired
+    TrendingProducts trendingProducts;
+    @Autowired
+    CoPurchases coPurchases;
+    @Autowired
+    SimilarProducts similarProducts;
+    @Autowired
+    OfferPricing offerPricing;
 
     public IProduct getProductById(long productId) throws SQLException {
-        String sql = "SELECT p.id, description, price, brand_id, p.sub_category_id, " +
-                "offer_id, discount_percent, a.id, a.name, value\n" +
+        IProduct cached = productCache.get(productId);
+        if (cached != null){
+            return cached;
+        }
+        long generation = productCache.getGeneration();
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, " +
+                "offer_id\n" +
                 "FROM `technopolis`.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = offer_id\n" +
-                "LEFT JOIN `technopolis`.products_have_attriubtes as pa ON pa.product_id = p.id\n" +
-                "LEFT JOIN `technopolis`.attributes as a on a.id = pa.attribute_id\n" +
                 "WHERE is_deleted = 0 and p.id = ?;";
+        IProductWithAttributes product;
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, productId);
@@ -33,8 +81,11 @@ public class ProductDao extends Dao {
             if(!result.next()){
                 return null;
             }
-            return getSingleProductAccordingToOffer(result);
+            product = getSingleProductAccordingToOffer(result);
         }
+        product.setAttributes(attributeDao.getAttributesOfProduct(productId, product.getSubCategoryId()));
+        productCache.put(product, generation);
+        return product;
     }
 
     public void addProduct(CreateProductDto product) throws SQLException {
@@ -52,36 +103,202 @@ public class ProductDao extends Dao {
             resultSet.next();
             product.setId(resultSet.getInt(1));
         }
+        productCache.invalidate(product.getId());
+        descriptionIndex.add(product.getId(), product.getDescription());
+        catalogIndex.put(new Product(product.getId(), product.getDescription(), product.getPrice(),
+                product.getBrandId(), product.getSubCategoryId(), 0));
+        similarProducts.productChanged(product.getId());
+    }
+
+    // one transaction per call, the products and their attributes go out as two jdbc batches
+    public void addProducts(List<ImportProductDto> products) throws SQLException {
+        String productSql = "INSERT INTO `technopolis`.`products` " +
+                "(description, price, brand_id, sub_category_id) " +
+                "VALUES (?, ?, ?, ?)";
+        String attributeSql = "INSERT INTO `technopolis`.`products_have_attriubtes` " +
+                "(`product_id`, `attribute_id`, `value`) " +
+                "VALUES (?, ?, ?)";
+        Connection connection = jdbcTemplate.getDataSource().getConnection();
+        try (PreparedStatement productStatement = connection.prepareStatement(productSql, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement attributeStatement = connection.prepareStatement(attributeSql)) {
+            connection.setAutoCommit(false);
+            for (ImportProductDto product : products) {
+                productStatement.setString(1, product.getDescription());
+                productStatement.setDouble(2, product.getPrice());
+                productStatement.setLong(3, product.getBrandId());
+                productStatement.setLong(4, product.getSubCategoryId());
+                productStatement.addBatch();
+            }
+            productStatement.executeBatch();
+            ResultSet keys = productStatement.getGeneratedKeys();
+            boolean hasAttributes = false;
+            for (ImportProductDto product : products) {
+                keys.next();
+                product.setId(keys.getLong(1));
+                for (AttributeValueDto attribute : product.getAttributes()) {
+                    attributeStatement.setLong(1, product.getId());
+                    attributeStatement.setLong(2, attribute.getId());
+                    attributeStatement.setString(3, attribute.getValue());
+                    attributeStatement.addBatch();
+                    hasAttributes = true;
+                }
+            }
+            if (hasAttributes) {
+                attributeStatement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+        finally {
+            connection.setAutoCommit(true);
+            connection.close();
+        }
+        for (ImportProductDto product : products) {
+            productCache.invalidate(product.getId());
+            descriptionIndex.add(product.getId(), product.getDescription());
+            catalogIndex.put(new Product(product.getId(), product.getDescription(), product.getPrice(),
+                    product.getBrandId(), product.getSubCategoryId(), 0));
+            similarProducts.productChanged(product.getId());
+        }
+    }
+
+    // products deleted since they trended are left out
+    public List<IProduct> getTrendingProducts(Long subCategoryId, int limit) {
+        return getIndexedProducts(trendingProducts.getTrending(subCategoryId, limit));
+    }
+
+    public List<IProduct> getAlsoBought(long productId, int limit) {
+        return getIndexedProducts(coPurchases.getAlsoBought(productId, limit));
+    }
+
+    public List<IProduct> getSimilarProducts(long productId, int limit) {
+        return getIndexedProducts(similarProducts.getSimilar(productId, limit));
+    }
+
+    private List<IProduct> getIndexedProducts(List<Long> productIds) {
+        List<IProduct> products = new ArrayList<>();
+        for (long productId : productIds) {
+            IProduct product = catalogIndex.get(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
     }
 
-    public List<IProduct> getAllProducts(int pageNumber){
-        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id, " +
-                "discount_percent\n" +
+    public List<IProduct> getAllActiveProducts() {
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
+                "FROM `technopolis`.products AS p\n" +
+                "WHERE is_deleted = 0;";
+        return jdbcTemplate.query(sql, (result, i) -> getProductAccordingToOffer(result));
+    }
+
+    // a forward-only cursor over one chunk of products and their attributes, each product goes to the handler
+    // as soon as its last row is read, so only one product is held at a time. the caller asks for the next chunk
+    // with the last id, so a connection is held for one chunk only. returns how many products were handled
+    public int exportProducts(long afterId, int limit, ExportedProductHandler handler)
+            throws SQLException, IOException {
+        String sql = "SELECT p.id, description, price, brand_id, p.sub_category_id, offer_id, " +
+                "a.id, a.name, a.sub_category_id AS attribute_sub_category_id, pa.value\n" +
+                "FROM (SELECT id FROM `technopolis`.products " +
+                "WHERE is_deleted = 0 AND id > ? ORDER BY id LIMIT ?) AS chunk\n" +
+                "JOIN `technopolis`.products AS p ON p.id = chunk.id\n" +
+                "LEFT JOIN `technopolis`.products_have_attriubtes AS pa ON pa.product_id = p.id\n" +
+                "LEFT JOIN `technopolis`.attributes AS a ON a.id = pa.attribute_id\n" +
+                "ORDER BY p.id;";
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(EXPORT_FETCH_SIZE);
+            statement.setLong(1, afterId);
+            statement.setInt(2, limit);
+            ResultSet result = statement.executeQuery();
+            int handled = 0;
+            IProductWithAttributes product = null;
+            while (result.next()) {
+                if (product == null || product.getId() != result.getLong("p.id")) {
+                    if (product != null) {
+                        handler.handle(product);
+                        handled++;
+                    }
+                    product = getSingleProductAccordingToOffer(result);
+                }
+                long attributeId = result.getLong("a.id");
+                if (attributeId != 0) {
+                    product.getAttributes().add(new Attribute(
+                            attributeId,
+                            result.getString("a.name"),
+                            result.getLong("attribute_sub_category_id"),
+                            result.getString("pa.value")
+                    ));
+                }
+            }
+            if (product != null) {
+                handler.handle(product);
+                handled++;
+            }
+            return handled;
+        }
+    }
+
+    public interface ExportedProductHandler {
+
+        void handle(IProductWithAttributes product) throws IOException;
+
+    }
+
+    public PageDto<IProduct> getAllProducts(int pageNumber, ProductSorting sorting){
+        if (sorting != ProductSorting.ID) {
+            return sortedPage(sortedQuery(null, null, sorting, null), pageNumber, listingCounts.countProducts());
+        }
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
                 "FROM `technopolis`.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = offer_id\n" +
                 "WHERE is_deleted = 0\n" +
                 "LIMIT ?\n" +
                 "OFFSET ?;";
-        return jdbcTemplate.query(sql,
+        List<IProduct> products = jdbcTemplate.query(sql,
                 preparedStatement -> {
-                    preparedStatement.setInt(1, pageNumber * PAGE_SIZE);
+                    preparedStatement.setInt(1, PAGE_SIZE);
                     preparedStatement.setInt(2, pageNumber * PAGE_SIZE - PAGE_SIZE);
                 },
                 (result, i) -> getProductAccordingToOffer(result));
+        return page(products, pageNumber, listingCounts.countProducts());
     }
 
-    public List<IProduct> getProductsBySubCategory(long subCategoryId, int pageNumber) throws SQLException {
-        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id," +
-                " discount_percent\n" +
+    public ProductPageDto getAllProducts(Cursor cursor, ProductSorting sorting) {
+        if (sorting != ProductSorting.ID) {
+            return catalogIndex.find(sortedQuery(null, null, sorting, cursor), 0, PAGE_SIZE);
+        }
+        long lastId = cursor == null ? 0 : cursor.getId();
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
+                "FROM `technopolis`.products AS p\n" +
+                "WHERE is_deleted = 0 AND p.id > ?\n" +
+                "ORDER BY p.id ASC\n" +
+                "LIMIT ?;";
+        return seekPage(sql,
+                preparedStatement -> {
+                    preparedStatement.setLong(1, lastId);
+                    preparedStatement.setInt(2, PAGE_SIZE + 1);
+                });
+    }
+
+    public PageDto<IProduct> getProductsBySubCategory(long subCategoryId, int pageNumber,
+                                                     ProductSorting sorting) throws SQLException {
+        if (sorting != ProductSorting.ID) {
+            return sortedPage(sortedQuery(subCategoryId, null, sorting, null), pageNumber,
+                    listingCounts.countProductsBySubCategory(subCategoryId));
+        }
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
                 "FROM `technopolis`.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = offer_id\n" +
                 "WHERE is_deleted = 0 AND sub_category_id = ?\n" +
                 "LIMIT ?\n" +
                 "OFFSET ?;";
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, subCategoryId);
-            statement.setInt(2, pageNumber * PAGE_SIZE);
+            statement.setInt(2, PAGE_SIZE);
             statement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
             ResultSet result = statement.executeQuery();
             List<IProduct> products = new ArrayList<>();
@@ -89,77 +306,252 @@ public class ProductDao extends Dao {
                 IProduct product = getProductAccordingToOffer(result);
                 products.add(product);
             }
-            return products;
+            return page(products, pageNumber, listingCounts.countProductsBySubCategory(subCategoryId));
         }
     }
 
-    public List<IProduct> lookForProductsByDescription(String description, int pageNumber) {
-        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id," +
-                " discount_percent\n" +
-                "FROM technopolis.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = p.offer_id\n" +
-                "WHERE is_deleted = 0 AND description LIKE ?\n" +
-                "LIMIT ?\n" +
-                "OFFSET ?;";
-        return jdbcTemplate.query(sql,
+    public ProductPageDto getProductsBySubCategory(long subCategoryId, Cursor cursor, ProductSorting sorting) {
+        if (sorting != ProductSorting.ID) {
+            return catalogIndex.find(sortedQuery(subCategoryId, null, sorting, cursor), 0, PAGE_SIZE);
+        }
+        long lastId = cursor == null ? 0 : cursor.getId();
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
+                "FROM `technopolis`.products AS p\n" +
+                "WHERE is_deleted = 0 AND sub_category_id = ? AND p.id > ?\n" +
+                "ORDER BY p.id ASC\n" +
+                "LIMIT ?;";
+        return seekPage(sql,
                 preparedStatement -> {
-                    preparedStatement.setString(1, "%" + description + "%");
-                    preparedStatement.setInt(2, pageNumber * PAGE_SIZE);
-                    preparedStatement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
-                },
-                (result, i) -> getProductAccordingToOffer(result));
+                    preparedStatement.setLong(1, subCategoryId);
+                    preparedStatement.setLong(2, lastId);
+                    preparedStatement.setInt(3, PAGE_SIZE + 1);
+                });
+    }
+
+    public PageDto<IProduct> lookForProductsByDescription(String description, int pageNumber) {
+        List<SearchHit> hits = descriptionIndex.searchTolerant(description);
+        int from = Math.min(hits.size(), pageNumber * PAGE_SIZE - PAGE_SIZE);
+        int to = Math.min(hits.size(), from + PAGE_SIZE);
+        return page(getProductsByIds(toIds(hits.subList(from, to))), pageNumber, hits.size());
     }
 
-    public List<IProduct> getProductsByPriceRange(FilterForProductsDto filterForProductsDto, int pageNumber) {
-        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id," +
-                " o.discount_percent\n" +
+    // the cursor carries the statistics the first page was ranked with, so the scores it seeks on stay put
+    public ProductPageDto lookForProductsByDescription(String description, Cursor cursor) {
+        SearchSnapshot snapshot = cursor == null || cursor.getSnapshot() == null ?
+                null : SearchSnapshot.decode(cursor.getSnapshot());
+        RankedHits ranked = descriptionIndex.searchTolerant(description, snapshot);
+        List<SearchHit> hits = ranked.getHits();
+        int from = 0;
+        if (cursor != null) {
+            while (from < hits.size() && !isAfter(hits.get(from), cursor)) {
+                from++;
+            }
+        }
+        int to = Math.min(hits.size(), from + PAGE_SIZE);
+        String nextCursor = null;
+        if (to < hits.size()) {
+            SearchHit last = hits.get(to - 1);
+            nextCursor = new Cursor(last.getScore(), last.getProductId(), ranked.getSnapshot().encode()).encode();
+        }
+        return new ProductPageDto(getProductsByIds(toIds(hits.subList(from, to))), nextCursor);
+    }
+
+    // hits are ordered by score descending, then by id ascending
+    private boolean isAfter(SearchHit hit, Cursor cursor) {
+        return hit.getScore() < cursor.getSortKey() ||
+                (hit.getScore() == cursor.getSortKey() && hit.getProductId() > cursor.getId());
+    }
+
+    private List<Long> toIds(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getProductId).collect(Collectors.toList());
+    }
+
+    // products come back in the order of the ids, the ones not found are left out
+    public List<IProduct> getProductsByIds(Collection<Long> ids) {
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Long, IProduct> products = new HashMap<>();
+        for (int from = 0; from < distinctIds.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(distinctIds.size(), from + MAX_IDS_PER_QUERY));
+            String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+            String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
+                    "FROM technopolis.products AS p\n" +
+                    "WHERE is_deleted = 0 AND p.id IN (" + placeholders + ");";
+            jdbcTemplate.query(sql,
+                    preparedStatement -> {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            preparedStatement.setLong(i + 1, chunk.get(i));
+                        }
+                    },
+                    result -> {
+                        IProduct product = getProductAccordingToOffer(result);
+                        products.put(product.getId(), product);
+                    });
+        }
+        List<IProduct> ordered = new ArrayList<>();
+        for (long id : distinctIds) {
+            IProduct product = products.get(id);
+            if (product != null) {
+                ordered.add(product);
+            }
+        }
+        return ordered;
+    }
+
+    public PageDto<IProduct> getProductsByPriceRange(FilterForProductsDto filterForProductsDto, int pageNumber) {
+        CatalogQuery query = toCatalogQuery(filterForProductsDto, null);
+        return sortedPage(query, pageNumber, catalogIndex.count(query));
+    }
+
+    public ProductPageDto getProductsByPriceRange(FilterForProductsDto filterForProductsDto, Cursor cursor) {
+        return catalogIndex.find(toCatalogQuery(filterForProductsDto, cursor), 0, PAGE_SIZE);
+    }
+
+    private CatalogQuery toCatalogQuery(FilterForProductsDto filterForProductsDto, Cursor cursor) {
+        CatalogQuery query = new CatalogQuery();
+        query.setMinPrice(filterForProductsDto.getMinPrice());
+        query.setMaxPrice(filterForProductsDto.getMaxPrice());
+        query.setSorting(checkSorting(filterForProductsDto));
+        query.setAfter(cursor);
+        return query;
+    }
+
+    // orders other than id come precomputed from the catalog index instead of a sort in mysql
+    private CatalogQuery sortedQuery(Long subCategoryId, Long brandId, ProductSorting sorting, Cursor cursor) {
+        CatalogQuery query = new CatalogQuery();
+        query.setSubCategoryId(subCategoryId);
+        query.setBrandId(brandId);
+        query.setSorting(sorting);
+        query.setAfter(cursor);
+        return query;
+    }
+
+    private PageDto<IProduct> sortedPage(CatalogQuery query, int pageNumber, int totalCount) {
+        return page(catalogIndex.find(query, pageNumber * PAGE_SIZE - PAGE_SIZE, PAGE_SIZE).getProducts(),
+                pageNumber, totalCount);
+    }
+
+    // one query returns every match, the facets are counted over it in a single pass
+    public FacetedSearchResultDto searchProducts(SearchProductsDto filter, int pageNumber) {
+        StringBuilder where = new StringBuilder("WHERE p.is_deleted = 0");
+        List<Object> parameters = new ArrayList<>();
+        if (filter.getSubCategoryId() != null) {
+            where.append(" AND sub_category_id = ?");
+            parameters.add(filter.getSubCategoryId());
+        }
+        if (filter.getBrandId() != null) {
+            where.append(" AND brand_id = ?");
+            parameters.add(filter.getBrandId());
+        }
+        for (AttributeValueDto attribute : filter.getAttributes()) {
+            where.append(" AND p.id IN (SELECT product_id FROM `technopolis`.products_have_attriubtes " +
+                    "WHERE attribute_id = ? AND value = ?)");
+            parameters.add(attribute.getId());
+            parameters.add(attribute.getValue());
+        }
+        // the price shown is the discounted one, so the range and the buckets go by it as well
+        String having = "";
+        if (filter.getMinPrice() != 0 || filter.getMaxPrice() != 0) {
+            having = "HAVING effective_price BETWEEN ? AND ?\n";
+            parameters.add(filter.getMinPrice());
+            parameters.add(filter.getMaxPrice() == 0 ? Integer.MAX_VALUE : filter.getMaxPrice());
+        }
+        String sql = "SELECT p.id, brand_id, sub_category_id, " +
+                "p.price * (1 - " + offerPricing.discountSql("p.offer_id") + ") AS effective_price\n" +
                 "FROM technopolis.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = p.offer_id\n" +
-                "WHERE is_deleted = 0 AND (price BETWEEN ? AND ?) \n" +
-                "ORDER BY " + checkSorting(filterForProductsDto) + "\n" +
-                "LIMIT ?\n" +
-                "OFFSET ?;";
-        return jdbcTemplate.query(sql,
-                preparedStatement -> {
-                    preparedStatement.setDouble(1, filterForProductsDto.getMinPrice());
-                    preparedStatement.setDouble(2, filterForProductsDto.getMaxPrice());
-                    preparedStatement.setInt(3, pageNumber * PAGE_SIZE);
-                    preparedStatement.setInt(4, pageNumber * PAGE_SIZE - PAGE_SIZE);
-                },
-                (result, i) -> getProductAccordingToOffer(result)
-        );
+                where + "\n" +
+                having +
+                "ORDER BY " + checkSorting(filter).getOrderBy() + ";";
+        int from = pageNumber * PAGE_SIZE - PAGE_SIZE;
+        List<Long> pageIds = new ArrayList<>();
+        Map<Long, Integer> brands = new TreeMap<>();
+        Map<Long, Integer> subCategories = new TreeMap<>();
+        Map<String, Integer> priceRanges = new LinkedHashMap<>();
+        for (int i = 0; i <= PRICE_RANGES.length; i++) {
+            priceRanges.put(getPriceRangeName(i), 0);
+        }
+        int[] totalCount = new int[1];
+        jdbcTemplate.query(sql, parameters.toArray(), result -> {
+            int row = totalCount[0]++;
+            if (row >= from && row < from + PAGE_SIZE) {
+                pageIds.add(result.getLong("id"));
+            }
+            brands.merge(result.getLong("brand_id"), 1, Integer::sum);
+            subCategories.merge(result.getLong("sub_category_id"), 1, Integer::sum);
+            priceRanges.merge(getPriceRangeName(getPriceRange(result.getDouble("effective_price"))), 1, Integer::sum);
+        });
+        return new FacetedSearchResultDto(getProductsByIds(pageIds), totalCount[0],
+                brands, subCategories, priceRanges);
+    }
+
+    private int getPriceRange(double price) {
+        int range = 0;
+        while (range < PRICE_RANGES.length && price >= PRICE_RANGES[range]) {
+            range++;
+        }
+        return range;
+    }
+
+    private String getPriceRangeName(int range) {
+        String from = range == 0 ? "0" : String.valueOf(PRICE_RANGES[range - 1]);
+        String to = range == PRICE_RANGES.length ? "" : String.valueOf(PRICE_RANGES[range]);
+        return from + "-" + to;
     }
 
-    private String checkSorting(FilterForProductsDto filterForProductsDto) { // todo: make two separate gets for those
+    // "asc" and "desc" still mean price, any other sorting goes by its name, unknown ones fall back to id
+    private ProductSorting checkSorting(FilterForProductsDto filterForProductsDto) {
         String sorted = filterForProductsDto.getSorted();
-        String wayOfSorting = "id ASC";
+        ProductSorting wayOfSorting = ProductSorting.ID;
         if (sorted != null && !sorted.trim().isEmpty()){
             if (sorted.equalsIgnoreCase("desc") || sorted.equalsIgnoreCase("descending")){
-                wayOfSorting = "price DESC";
+                wayOfSorting = ProductSorting.PRICE_DESC;
+            }
+            else if (sorted.equalsIgnoreCase("asc") || sorted.equalsIgnoreCase("ascending")){
+                wayOfSorting = ProductSorting.PRICE_ASC;
             }
-            if (sorted.equalsIgnoreCase("asc") || sorted.equalsIgnoreCase("ascending")){
-                wayOfSorting = "price ASC";
+            else if (ProductSorting.parse(sorted) != null){
+                wayOfSorting = ProductSorting.parse(sorted);
             }
         }
         return wayOfSorting;
     }
 
-    public List<IProduct> getProductsByBrand(long brandId, int pageNumber){
-        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id," +
-                " o.discount_percent\n" +
+    public PageDto<IProduct> getProductsByBrand(long brandId, int pageNumber, ProductSorting sorting){
+        if (sorting != ProductSorting.ID) {
+            return sortedPage(sortedQuery(null, brandId, sorting, null), pageNumber,
+                    listingCounts.countProductsByBrand(brandId));
+        }
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
                 "FROM technopolis.products AS p\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON o.id = p.offer_id\n" +
                 "WHERE is_deleted = 0 AND brand_id = ?\n" +
                 "LIMIT ?\n" +
                 "OFFSET ?;";
-        return jdbcTemplate.query(sql,
+        List<IProduct> products = jdbcTemplate.query(sql,
                 preparedStatement -> {
                     preparedStatement.setDouble(1, brandId);
-                    preparedStatement.setInt(2, pageNumber * PAGE_SIZE);
+                    preparedStatement.setInt(2, PAGE_SIZE);
                     preparedStatement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
                 },
                 (result, i) -> getProductAccordingToOffer(result)
         );
+        return page(products, pageNumber, listingCounts.countProductsByBrand(brandId));
+    }
+
+    public ProductPageDto getProductsByBrand(long brandId, Cursor cursor, ProductSorting sorting) {
+        if (sorting != ProductSorting.ID) {
+            return catalogIndex.find(sortedQuery(null, brandId, sorting, cursor), 0, PAGE_SIZE);
+        }
+        long lastId = cursor == null ? 0 : cursor.getId();
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
+                "FROM technopolis.products AS p\n" +
+                "WHERE is_deleted = 0 AND brand_id = ? AND p.id > ?\n" +
+                "ORDER BY p.id ASC\n" +
+                "LIMIT ?;";
+        return seekPage(sql,
+                preparedStatement -> {
+                    preparedStatement.setLong(1, brandId);
+                    preparedStatement.setLong(2, lastId);
+                    preparedStatement.setInt(3, PAGE_SIZE + 1);
+                });
     }
 
     public boolean deleteProduct(long productId) throws SQLException {
@@ -167,16 +559,63 @@ public class ProductDao extends Dao {
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, productId);
-            return statement.executeUpdate() != 0;
+            boolean deleted = statement.executeUpdate() != 0;
+            if (deleted) {
+                descriptionIndex.remove(productId);
+                catalogIndex.remove(productId);
+                similarProducts.productChanged(productId);
+            }
+            return deleted;
+        }
+        finally {
+            productCache.invalidate(productId);
+        }
+    }
+
+    // fetches PAGE_SIZE + 1 rows, so the extra one only tells whether there is a next page
+    ProductPageDto seekPage(String sql, PreparedStatementSetter setter) {
+        List<IProduct> products = jdbcTemplate.query(sql, setter, (result, i) -> getProductAccordingToOffer(result));
+        if (products.size() <= PAGE_SIZE) {
+            return new ProductPageDto(products, null);
+        }
+        products = new ArrayList<>(products.subList(0, PAGE_SIZE));
+        IProduct last = products.get(PAGE_SIZE - 1);
+        return new ProductPageDto(products, new Cursor(last.getId(), last.getId()).encode());
+    }
+
+    // keeps the catalog index in line with the row after its offer changed
+    void reindexProduct(long productId) {
+        List<IProduct> products = getProductsByIds(Collections.singletonList(productId));
+        if (products.isEmpty()) {
+            catalogIndex.remove(productId);
+        } else {
+            catalogIndex.put(products.get(0));
         }
     }
 
+    public void reindexProducts(Collection<Long> productIds) {
+        for (IProduct product : getProductsByIds(productIds)) {
+            catalogIndex.put(product);
+        }
+    }
+
+    // the offer started or ended, so its products have a new effective price
+    public void reindexOffer(long offerId) {
+        String sql = "SELECT p.id, description, price, brand_id, sub_category_id, offer_id\n" +
+                "FROM `technopolis`.products AS p\n" +
+                "WHERE is_deleted = 0 AND offer_id = ?;";
+        jdbcTemplate.query(sql, preparedStatement -> preparedStatement.setLong(1, offerId),
+                result -> {
+                    catalogIndex.put(getProductAccordingToOffer(result));
+                });
+    }
+
     IProduct getProductAccordingToOffer(ResultSet result) throws SQLException {
         long offerId = result.getLong("offer_id");
         IProduct product;
-        if (offerId != 0){
+        Double discountPercent = offerPricing.getDiscount(offerId);
+        if (discountPercent != null){
             double price = result.getDouble("price");
-            double discountPercent = result.getDouble("discount_percent");
             product = new ProductInOfferDto(
                     result.getInt("p.id"),
                     result.getString("description"),
@@ -200,12 +639,12 @@ public class ProductDao extends Dao {
         return product;
     }
 
-    IProduct getSingleProductAccordingToOffer(ResultSet result) throws SQLException {
+    IProductWithAttributes getSingleProductAccordingToOffer(ResultSet result) throws SQLException {
         long offerId = result.getLong("offer_id");
         IProductWithAttributes product;
-        if (offerId != 0){
+        Double discountPercent = offerPricing.getDiscount(offerId);
+        if (discountPercent != null){
             double price = result.getDouble("price");
-            double discountPercent = result.getDouble("discount_percent");
             product = new ProductWithAttributesInOfferDto(
                     result.getInt("p.id"),
                     result.getString("description"),
@@ -226,17 +665,6 @@ public class ProductDao extends Dao {
                     offerId
             );
         }
-        List<Attribute> attributes = new ArrayList<>();
-        do {
-            Attribute attribute = new Attribute(
-                    result.getLong("a.id"),
-                    result.getString("a.name"),
-                    result.getLong("p.sub_category_id"),
-                    result.getString("value")
-            );
-            attributes.add(attribute);
-        } while (result.next());
-        product.setAttributes(attributes);
         return product;
     }
 
@@ -1,9 +1,12 @@
 package technopolisspring.technopolis.model.daos;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import technopolisspring.technopolis.model.dto.EditReviewDto;
+import technopolisspring.technopolis.model.dto.PageDto;
 import technopolisspring.technopolis.model.dto.ReviewOfUserDto;
 import technopolisspring.technopolis.model.dto.UserWithoutPasswordDto;
+import technopolisspring.technopolis.model.index.ListingCounts;
 import technopolisspring.technopolis.model.pojos.Product;
 import technopolisspring.technopolis.model.pojos.Review;
 
@@ -14,6 +17,9 @@ import java.util.List;
 @Component
 public class ReviewDao extends Dao {
 
+    @Autowired
+    ListingCounts listingCounts;
+
     public void addReview(Review review, long productId, UserWithoutPasswordDto user) throws SQLException {
         String sql = "INSERT INTO `technopolis`.reviews (title, comment, product_id, user_id)\n" +
                 "VALUES (?,?,?,?);";
@@ -25,8 +31,10 @@ public class ReviewDao extends Dao {
             statement.setLong(4, user.getId());
             statement.execute();
             ResultSet resultSet = statement.getGeneratedKeys();
+            resultSet.next();
             review.setId(resultSet.getInt(1));
         }
+        listingCounts.reviewAdded(productId, user.getId());
     }
 
     public boolean editReview(EditReviewDto review) throws SQLException {
@@ -45,16 +53,19 @@ public class ReviewDao extends Dao {
         }
     }
 
-    public void deleteReview(long reviewId) throws SQLException {
+    public void deleteReview(Review review) throws SQLException {
         String sql = "DELETE FROM `technopolis`.reviews WHERE id = ? AND user_id = ?";
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setLong(1, reviewId);
-            statement.executeUpdate();
+            statement.setLong(1, review.getId());
+            statement.setLong(2, review.getUserId());
+            if (statement.executeUpdate() != 0) {
+                listingCounts.reviewDeleted(review.getProductId(), review.getUserId());
+            }
         }
     }
 
-    public List<ReviewOfUserDto> getReviewsOfUser(long userId, int pageNumber) throws SQLException {
+    public PageDto<ReviewOfUserDto> getReviewsOfUser(long userId, int pageNumber) throws SQLException {
         String sql = "SELECT r.id, r.title, r.comment,\n" +
                 "p.id, p.description, p.price, p.brand_id, p.sub_category_id, p.offer_id\n" +
                 "FROM `technopolis`.reviews AS r\n" +
@@ -65,7 +76,7 @@ public class ReviewDao extends Dao {
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, userId);
-            statement.setInt(2, pageNumber * PAGE_SIZE);
+            statement.setInt(2, PAGE_SIZE);
             statement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
             List<ReviewOfUserDto> reviews = new ArrayList<>();
             ResultSet result = statement.executeQuery();
@@ -86,7 +97,7 @@ public class ReviewDao extends Dao {
                 );
                 reviews.add(review);
             }
-            return reviews;
+            return page(reviews, pageNumber, listingCounts.countReviewsOfUser(userId));
         }
     }
 
@@ -105,29 +116,30 @@ public class ReviewDao extends Dao {
                     reviewId,
                     resultSet.getString("title"),
                     resultSet.getString("comment"),
-                    resultSet.getLong("product_id"),
-                    resultSet.getLong("user_id")
+                    resultSet.getLong("user_id"),
+                    resultSet.getLong("product_id")
             );
         }
     }
 
-    public List<Review> getReviewsOfProduct(long productId, int pageNumber) {
+    public PageDto<Review> getReviewsOfProduct(long productId, int pageNumber) {
         String sql = "SELECT id, title, comment, product_id, user_id\n" +
                 "FROM technopolis.reviews\n" +
                 "WHERE product_id = ?\n" +
                 "LIMIT ?\n" +
                 "OFFSET ?;";
-        return jdbcTemplate.query(sql, ps -> {
+        List<Review> reviews = jdbcTemplate.query(sql, ps -> {
             ps.setLong(1, productId);
-            ps.setInt(2, pageNumber * PAGE_SIZE);
+            ps.setInt(2, PAGE_SIZE);
             ps.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
         }, (resultSet, i) -> new Review(
                 resultSet.getLong("id"),
                 resultSet.getString("title"),
                 resultSet.getString("comment"),
-                resultSet.getLong("product_id"),
-                resultSet.getLong("user_id")
+                resultSet.getLong("user_id"),
+                resultSet.getLong("product_id")
         ));
+        return page(reviews, pageNumber, listingCounts.countReviewsOfProduct(productId));
     }
 
 }
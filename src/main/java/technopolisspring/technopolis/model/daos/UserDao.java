@@ -4,7 +4,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import technopolisspring.technopolis.model.dto.EditUserDto;
 import technopolisspring.technopolis.model.dto.OrderWithoutProductsDto;
+import technopolisspring.technopolis.model.dto.PageDto;
 import technopolisspring.technopolis.model.dto.UserWithoutPasswordDto;
+import technopolisspring.technopolis.model.index.ListingCounts;
 import technopolisspring.technopolis.model.pojos.IProduct;
 import technopolisspring.technopolis.model.pojos.User;
 
@@ -22,6 +24,8 @@ public class UserDao extends Dao {
     OfferDao offerDao;
     @Autowired
     ProductDao productDao;
+    @Autowired
+    ListingCounts listingCounts;
 
     public void registerUser(User user) throws SQLException {
         String sql = "INSERT INTO `technopolis`.users " +
@@ -86,19 +90,18 @@ public class UserDao extends Dao {
         }
     }
 
-    public List<IProduct> getFavourites(long userId, int pageNumber) throws SQLException {
+    public PageDto<IProduct> getFavourites(long userId, int pageNumber) throws SQLException {
         String sql = "SELECT p.id, p.description, p.price, p.brand_id, " +
-                "p.sub_category_id, p.offer_id, o.discount_percent\n" +
+                "p.sub_category_id, p.offer_id\n" +
                 "FROM `technopolis`.products AS p\n" +
                 "JOIN `technopolis`.users_like_products AS ulp ON p.id = ulp.product_id\n" +
-                "LEFT JOIN `technopolis`.offers AS o ON p.offer_id = o.id\n" +
                 "WHERE p.is_deleted = 0 AND ulp.user_id = ?\n" +
                 "LIMIT ?\n" +
                 "OFFSET ?;";
         try (Connection connection = jdbcTemplate.getDataSource().getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, userId);
-            statement.setInt(2, pageNumber * PAGE_SIZE);
+            statement.setInt(2, PAGE_SIZE);
             statement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
             List<IProduct> favorites = new ArrayList<>();
             ResultSet result = statement.executeQuery();
@@ -106,7 +109,7 @@ public class UserDao extends Dao {
                 IProduct product = productDao.getProductAccordingToOffer(result);
                 favorites.add(product);
             }
-            return favorites;
+            return page(favorites, pageNumber, listingCounts.countFavorites(userId));
         }
     }
 
@@ -118,6 +121,7 @@ public class UserDao extends Dao {
             statement.setLong(2, userId);
             statement.execute();
         }
+        listingCounts.favoriteAdded(userId);
     }
 
     public boolean removeFromFavorites(long productId, long userId) throws SQLException {
@@ -127,8 +131,12 @@ public class UserDao extends Dao {
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setLong(1, productId);
             statement.setLong(2, userId);
-            return statement.executeUpdate() != 0;
+            if (statement.executeUpdate() == 0) {
+                return false;
+            }
         }
+        listingCounts.favoriteRemoved(userId);
+        return true;
     }
 
     public boolean isAdmin(long userId) throws SQLException {
@@ -142,15 +150,15 @@ public class UserDao extends Dao {
         }
     }
 
-    public List<OrderWithoutProductsDto> getOrders(long userId, int pageNumber) {
+    public PageDto<OrderWithoutProductsDto> getOrders(long userId, int pageNumber) {
         String sql = "SELECT id, address, price\n" +
                 "FROM `technopolis`.orders \n" +
                 "WHERE user_id = ?\n" +
                 "LIMIT ?\n" +
                 "OFFSET ?;";
-        return jdbcTemplate.query(sql, statement -> {
+        List<OrderWithoutProductsDto> orders = jdbcTemplate.query(sql, statement -> {
             statement.setLong(1, userId);
-            statement.setInt(2, pageNumber * PAGE_SIZE);
+            statement.setInt(2, PAGE_SIZE);
             statement.setInt(3, pageNumber * PAGE_SIZE - PAGE_SIZE);
         },
                 (result, i) -> new OrderWithoutProductsDto(
@@ -160,6 +168,7 @@ public class UserDao extends Dao {
                         result.getDouble("price")
                 )
         );
+        return page(orders, pageNumber, listingCounts.countOrders(userId));
     }
 
     public User getUserByEmail(String email) throws SQLException {
@@ -0,0 +1,17 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttributeValueDto {
+
+    private long id;
+    private String value;
+
+}
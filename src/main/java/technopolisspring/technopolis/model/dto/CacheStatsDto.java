@@ -0,0 +1,20 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatsDto {
+
+    private int size;
+    private int capacity;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+}
@@ -0,0 +1,20 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DescriptionIndexStatsDto {
+
+    private int products;
+    private int terms;
+    private int trigrams;
+    private long trigramPostings;
+    private long estimatedDictionaryBytes;
+
+}
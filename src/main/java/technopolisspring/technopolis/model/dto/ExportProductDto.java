@@ -0,0 +1,26 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// an exported product reads back as an ImportProductDto, the id and the offer are left out on import
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportProductDto {
+
+    private long id;
+    private String description;
+    private double price; // before any discount
+    private long brandId;
+    private long subCategoryId;
+    private long offerId;
+    private List<AttributeValueDto> attributes = new ArrayList<>();
+
+}
@@ -0,0 +1,24 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetedSearchResultDto {
+
+    private List<IProduct> products;
+    private int totalCount;
+    private Map<Long, Integer> brands; // <brand id, matching products>
+    private Map<Long, Integer> subCategories; // <sub category id, matching products>
+    private Map<String, Integer> priceRanges; // <"from-to", matching products>
+
+}
@@ -0,0 +1,17 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportProductDto extends CreateProductDto {
+
+    private List<AttributeValueDto> attributes = new ArrayList<>();
+
+}
@@ -0,0 +1,26 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportReportDto {
+
+    private int imported;
+    private int failed;
+    private List<ImportErrorDto> errors = new ArrayList<>();
+    private long millis;
+    private double productsPerSecond;
+
+    public void addError(long row, String msg) {
+        this.failed++;
+        this.errors.add(new ImportErrorDto(row, msg));
+    }
+
+}
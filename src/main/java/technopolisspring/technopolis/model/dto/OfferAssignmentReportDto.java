@@ -0,0 +1,19 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OfferAssignmentReportDto {
+
+    private long offerId;
+    private int selected;
+    private int affected;
+    private long millis;
+
+}
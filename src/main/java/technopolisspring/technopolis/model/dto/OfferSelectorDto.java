@@ -0,0 +1,20 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// exactly one of the three picks the products
+@Getter
+@Setter
+@NoArgsConstructor
+public class OfferSelectorDto {
+
+    private List<Long> productIds = new ArrayList<>();
+    private Long brandId;
+    private Long subCategoryId;
+
+}
@@ -0,0 +1,21 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OfferSweepStatsDto {
+
+    private long runs;
+    private long rowsProcessed;
+    private int lastRunRows;
+    private long lastRunMillis;
+    private int expiredOffersFound;
+    private long lagSeconds; // how long the oldest expired offer found by the last run had been over
+
+}
@@ -0,0 +1,23 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import technopolisspring.technopolis.model.pojos.OrderStatus;
+
+// the order is only written with QUEUED, the later entries just close it.
+// FAILED entries are kept in the journal for a while, so the status survives a restart
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderJournalEntryDto {
+
+    private long ticket;
+    private OrderStatus status;
+    private QueuedOrderDto order;
+    private long userId;
+    private long time; // epoch millis
+
+}
@@ -0,0 +1,20 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderLatencyDto {
+
+    private String endpoint;
+    private long orders;
+    private double p50Millis;
+    private double p99Millis;
+    private double maxMillis;
+
+}
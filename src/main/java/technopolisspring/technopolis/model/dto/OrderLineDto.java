@@ -0,0 +1,18 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderLineDto {
+
+    private IProduct product;
+    private int quantity;
+
+}
@@ -0,0 +1,19 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import technopolisspring.technopolis.model.pojos.OrderStatus;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusDto {
+
+    private long ticket;
+    private Long orderId; // null until the order is written
+    private OrderStatus status;
+
+}
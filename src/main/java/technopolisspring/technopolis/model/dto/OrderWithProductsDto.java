@@ -0,0 +1,23 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderWithProductsDto {
+
+    private long id;
+    private long userId;
+    private String address;
+    private double price;
+    private List<OrderLineDto> lines = new ArrayList<>();
+
+}
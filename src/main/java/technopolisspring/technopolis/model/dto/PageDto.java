@@ -0,0 +1,22 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageDto<T> {
+
+    private List<T> items;
+    private int pageNumber;
+    private int totalCount;
+    private int totalPages;
+    private boolean hasNext;
+
+}
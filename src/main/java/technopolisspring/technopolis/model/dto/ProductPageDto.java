@@ -0,0 +1,20 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPageDto {
+
+    private List<IProduct> products;
+    private String nextCursor;
+
+}
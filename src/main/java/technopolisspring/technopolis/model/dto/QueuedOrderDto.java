@@ -0,0 +1,24 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueuedOrderDto {
+
+    private long ticket;
+    private long id; // 0 until the order is written
+    private long userId;
+    private String address;
+    private double price;
+    private Map<Long, Integer> lines = new HashMap<>(); // < product id, quantity >
+
+}
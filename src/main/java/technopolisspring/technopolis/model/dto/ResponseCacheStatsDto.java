@@ -0,0 +1,21 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResponseCacheStatsDto {
+
+    private int size;
+    private int capacity;
+    private long hits;
+    private long misses;
+    private long bytesFromCache;
+    private long bytesEncoded;
+
+}
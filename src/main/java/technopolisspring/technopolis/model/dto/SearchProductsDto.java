@@ -0,0 +1,19 @@
+package technopolisspring.technopolis.model.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class SearchProductsDto extends FilterForProductsDto {
+
+    private Long subCategoryId;
+    private Long brandId;
+    private List<AttributeValueDto> attributes = new ArrayList<>();
+
+}
@@ -0,0 +1,398 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.daos.OrderDao;
+import technopolisspring.technopolis.model.daos.ProductDao;
+import technopolisspring.technopolis.model.dto.ProductPageDto;
+import technopolisspring.technopolis.model.pojos.Cursor;
+import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.ProductSorting;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// columns of the non-deleted products ordered by effective (discounted) price, then id,
+// with every sort order precomputed for the whole catalog, each sub category and each brand.
+// changes are sorted in on a background thread and swapped in, requests read the last built columns meanwhile
+@Component
+public class CatalogIndex {
+
+    // sales move with every order, so a sales-only change waits this long before a rebuild
+    private static final long SALES_REFRESH_MILLIS = 60 * 1000;
+    // a price range matching less than this share of the group is cut from the price order and sorted,
+    // a wider one is cheaper to filter while walking the order, since the page fills early
+    private static final int SELECTIVE_PRICE_RANGE_SHARE = 8;
+
+    @Autowired
+    private ProductDao productDao;
+    @Autowired
+    private OrderDao orderDao;
+    @Autowired
+    private ListingCounts listingCounts;
+    @Autowired
+    private OffersView offersView;
+    private final Map<Long, IProduct> products = new ConcurrentHashMap<>();
+    private final Map<Long, Long> sales = new ConcurrentHashMap<>();
+    private volatile Columns columns = new Columns(new ArrayList<>(), sales);
+    private volatile boolean stale;
+    private volatile boolean salesStale;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        List<IProduct> loaded = productDao.getAllActiveProducts();
+        Map<Long, Long> loadedSales = orderDao.getSalesByProduct();
+        products.clear();
+        for (IProduct product : loaded) {
+            products.put(product.getId(), product);
+        }
+        sales.clear();
+        sales.putAll(loadedSales);
+        offersView.load(loaded);
+        rebuild();
+    }
+
+    @PreDestroy
+    public void stop() {
+        rebuilder.shutdownNow();
+    }
+
+    public void put(IProduct product) {
+        listingCounts.productChanged(products.put(product.getId(), product), product);
+        offersView.put(product);
+        stale = true;
+        scheduleRebuild();
+    }
+
+    public void remove(long productId) {
+        IProduct removed = products.remove(productId);
+        if (removed != null) {
+            listingCounts.productChanged(removed, null);
+            offersView.remove(productId);
+            stale = true;
+            scheduleRebuild();
+        }
+    }
+
+    public IProduct get(long productId) {
+        return products.get(productId);
+    }
+
+    public void addSales(long productId, int quantity) {
+        sales.merge(productId, (long) quantity, Long::sum);
+        salesStale = true;
+    }
+
+    public ProductPageDto find(CatalogQuery query, int skip, int limit) {
+        Columns columns = getColumns();
+        Orderings group = getGroup(columns, query);
+        if (group == null) {
+            return new ProductPageDto(new ArrayList<>(), null);
+        }
+        ProductSorting sorting = query.getSorting();
+        int[] order = group.get(sorting);
+        boolean backward = sorting == ProductSorting.PRICE_DESC || sorting == ProductSorting.NEWEST;
+        boolean byPrice = sorting == ProductSorting.PRICE_ASC || sorting == ProductSorting.PRICE_DESC;
+        // [from, to) of the order that can still make the page
+        int from = 0;
+        int to = order.length;
+        if (byPrice) {
+            from = columns.countBefore(order, sorting, query.getMinPrice(), Long.MIN_VALUE, false);
+            to = columns.countBefore(order, sorting, query.getMaxPrice(), Long.MAX_VALUE, true);
+        }
+        Cursor after = query.getAfter();
+        if (after != null) {
+            if (backward) {
+                to = Math.min(to, columns.countBefore(order, sorting, after.getSortKey(), after.getId(), false));
+            } else {
+                from = Math.max(from, columns.countBefore(order, sorting, after.getSortKey(), after.getId(), true));
+            }
+        }
+        List<Integer> positions = new ArrayList<>();
+        int wanted = limit + 1;
+        boolean priceRange = !byPrice && (query.getMinPrice() > 0 || query.getMaxPrice() < Double.MAX_VALUE);
+        boolean filtered = priceRange || (query.getSubCategoryId() != null && query.getBrandId() != null);
+        int[] priceOrder = group.get(ProductSorting.PRICE_ASC);
+        int priceFrom = 0;
+        int priceTo = priceOrder.length;
+        if (priceRange) {
+            ProductSorting ascending = ProductSorting.PRICE_ASC;
+            priceFrom = columns.countBefore(priceOrder, ascending, query.getMinPrice(), Long.MIN_VALUE, false);
+            priceTo = columns.countBefore(priceOrder, ascending, query.getMaxPrice(), Long.MAX_VALUE, true);
+        }
+        if (priceRange && (long) (priceTo - priceFrom) * SELECTIVE_PRICE_RANGE_SHARE < priceOrder.length) {
+            List<Integer> matches = columns.sortedMatches(priceOrder, priceFrom, priceTo, query, backward);
+            positions = matches.subList(Math.min(skip, matches.size()), Math.min(skip + wanted, matches.size()));
+        } else if (!filtered) {
+            // every entry in range belongs to the result, so the page is a slice
+            for (int i = skip; i < to - from && positions.size() < wanted; i++) {
+                positions.add(order[backward ? to - 1 - i : from + i]);
+            }
+        } else {
+            int skipped = 0;
+            for (int i = 0; i < to - from && positions.size() < wanted; i++) {
+                int position = order[backward ? to - 1 - i : from + i];
+                if (columns.matches(position, query)) {
+                    if (skipped < skip) {
+                        skipped++;
+                    } else {
+                        positions.add(position);
+                    }
+                }
+            }
+        }
+        List<IProduct> page = new ArrayList<>();
+        for (int i = 0; i < Math.min(positions.size(), limit); i++) {
+            page.add(columns.products[positions.get(i)]);
+        }
+        String nextCursor = null;
+        if (positions.size() > limit) {
+            int last = positions.get(limit - 1);
+            nextCursor = new Cursor(columns.sortKey(last, sorting), columns.ids[last]).encode();
+        }
+        return new ProductPageDto(page, nextCursor);
+    }
+
+    // every match of the query whatever its cursor, the price range is two binary searches on the price order
+    public int count(CatalogQuery query) {
+        Columns columns = getColumns();
+        Orderings group = getGroup(columns, query);
+        if (group == null) {
+            return 0;
+        }
+        int[] order = group.get(ProductSorting.PRICE_ASC);
+        int from = columns.countBefore(order, ProductSorting.PRICE_ASC, query.getMinPrice(), Long.MIN_VALUE, false);
+        int to = columns.countBefore(order, ProductSorting.PRICE_ASC, query.getMaxPrice(), Long.MAX_VALUE, true);
+        if (query.getSubCategoryId() == null || query.getBrandId() == null) {
+            return Math.max(0, to - from);
+        }
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (columns.matches(order[i], query)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Orderings getGroup(Columns columns, CatalogQuery query) {
+        if (query.getSubCategoryId() != null) {
+            return columns.bySubCategory.get(query.getSubCategoryId());
+        }
+        if (query.getBrandId() != null) {
+            return columns.byBrand.get(query.getBrandId());
+        }
+        return columns.all;
+    }
+
+    private Columns getColumns() {
+        if (stale || (salesStale && System.currentTimeMillis() - columns.builtAt > SALES_REFRESH_MILLIS)) {
+            scheduleRebuild();
+        }
+        return columns;
+    }
+
+    // at most one rebuild waits at a time, so a burst of changes costs one sort
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.execute(() -> {
+                // a change from here on schedules the next rebuild
+                rebuildScheduled.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    private void rebuild() {
+        stale = false;
+        salesStale = false;
+        columns = new Columns(new ArrayList<>(products.values()), sales);
+    }
+
+    // positions into the columns, one array per sort order
+    private static class Orderings {
+
+        private final int[] byPrice; // effective price then id, ascending
+        private final int[] byId; // ascending
+        private final int[] bySales; // most sold first, then id ascending
+
+        private Orderings(int[] byPrice, int[] byId, int[] bySales) {
+            this.byPrice = byPrice;
+            this.byId = byId;
+            this.bySales = bySales;
+        }
+
+        private int[] get(ProductSorting sorting) {
+            switch (sorting) {
+                case PRICE_ASC:
+                case PRICE_DESC:
+                    return byPrice;
+                case BEST_SELLING:
+                    return bySales;
+                default:
+                    return byId;
+            }
+        }
+
+    }
+
+    private static class Columns {
+
+        private final long[] ids;
+        private final double[] prices;
+        private final long[] brandIds;
+        private final long[] subCategoryIds;
+        private final long[] sales;
+        private final IProduct[] products;
+        private final Orderings all;
+        private final Map<Long, Orderings> bySubCategory = new HashMap<>();
+        private final Map<Long, Orderings> byBrand = new HashMap<>();
+        private final long builtAt = System.currentTimeMillis();
+
+        private Columns(List<IProduct> products, Map<Long, Long> sales) {
+            products.sort(Comparator.comparingDouble(IProduct::getPrice).thenComparingLong(IProduct::getId));
+            int size = products.size();
+            this.ids = new long[size];
+            this.prices = new double[size];
+            this.brandIds = new long[size];
+            this.subCategoryIds = new long[size];
+            this.sales = new long[size];
+            this.products = products.toArray(new IProduct[0]);
+            int[] byPrice = new int[size];
+            Integer[] sorted = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                IProduct product = this.products[i];
+                ids[i] = product.getId();
+                prices[i] = product.getPrice();
+                brandIds[i] = product.getBrandId();
+                subCategoryIds[i] = product.getSubCategoryId();
+                this.sales[i] = sales.getOrDefault(product.getId(), 0L);
+                byPrice[i] = i;
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, Comparator.comparingLong(i -> ids[i]));
+            int[] byId = unbox(sorted);
+            Arrays.sort(sorted, (a, b) -> compare(a, this.sales[b], ids[b], ProductSorting.BEST_SELLING));
+            int[] bySales = unbox(sorted);
+            this.all = new Orderings(byPrice, byId, bySales);
+            // walking the global orders keeps every group sorted without sorting it again
+            split(subCategoryIds, byPrice, byId, bySales).forEach((id, orders) ->
+                    bySubCategory.put(id, new Orderings(orders[0], orders[1], orders[2])));
+            split(brandIds, byPrice, byId, bySales).forEach((id, orders) ->
+                    byBrand.put(id, new Orderings(orders[0], orders[1], orders[2])));
+        }
+
+        private static Map<Long, int[][]> split(long[] groups, int[]... orders) {
+            Map<Long, Integer> sizes = new HashMap<>();
+            for (long group : groups) {
+                sizes.merge(group, 1, Integer::sum);
+            }
+            Map<Long, int[][]> split = new HashMap<>();
+            sizes.forEach((group, size) -> split.put(group, new int[orders.length][size]));
+            Map<Long, Integer> filled = new HashMap<>();
+            for (int o = 0; o < orders.length; o++) {
+                filled.clear();
+                for (int position : orders[o]) {
+                    long group = groups[position];
+                    int index = filled.merge(group, 1, Integer::sum) - 1;
+                    split.get(group)[o][index] = position;
+                }
+            }
+            return split;
+        }
+
+        private static int[] unbox(Integer[] positions) {
+            int[] unboxed = new int[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                unboxed[i] = positions[i];
+            }
+            return unboxed;
+        }
+
+        // the position against (sortKey, id) in the ascending array order of the sorting
+        private int compare(int position, double sortKey, long id, ProductSorting sorting) {
+            switch (sorting) {
+                case PRICE_ASC:
+                case PRICE_DESC:
+                    if (prices[position] != sortKey) {
+                        return Double.compare(prices[position], sortKey);
+                    }
+                    return Long.compare(ids[position], id);
+                case BEST_SELLING:
+                    if (sales[position] != sortKey) {
+                        return Double.compare(sortKey, sales[position]);
+                    }
+                    return Long.compare(ids[position], id);
+                default:
+                    return Long.compare(ids[position], id);
+            }
+        }
+
+        // how many entries of the order come before (sortKey, id), or before and at it when inclusive
+        private int countBefore(int[] order, ProductSorting sorting, double sortKey, long id, boolean inclusive) {
+            int low = 0;
+            int high = order.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int compared = compare(order[middle], sortKey, id, sorting);
+                if (compared < 0 || (inclusive && compared == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private double sortKey(int position, ProductSorting sorting) {
+            switch (sorting) {
+                case PRICE_ASC:
+                case PRICE_DESC:
+                    return prices[position];
+                case BEST_SELLING:
+                    return sales[position];
+                default:
+                    return ids[position];
+            }
+        }
+
+        // the matches in [from, to) of the price order that come after the cursor, in the order of the sorting
+        private List<Integer> sortedMatches(int[] byPrice, int from, int to, CatalogQuery query, boolean backward) {
+            ProductSorting sorting = query.getSorting();
+            Cursor after = query.getAfter();
+            List<Integer> matches = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                int position = byPrice[i];
+                if (!matches(position, query)) {
+                    continue;
+                }
+                if (after != null) {
+                    int compared = compare(position, after.getSortKey(), after.getId(), sorting);
+                    if (backward ? compared >= 0 : compared <= 0) {
+                        continue;
+                    }
+                }
+                matches.add(position);
+            }
+            Comparator<Integer> ascending = (a, b) -> compare(a, sortKey(b, sorting), ids[b], sorting);
+            matches.sort(backward ? ascending.reversed() : ascending);
+            return matches;
+        }
+
+        private boolean matches(int position, CatalogQuery query) {
+            return (query.getBrandId() == null || brandIds[position] == query.getBrandId()) &&
+                    (query.getSubCategoryId() == null || subCategoryIds[position] == query.getSubCategoryId()) &&
+                    prices[position] >= query.getMinPrice() && prices[position] <= query.getMaxPrice();
+        }
+
+    }
+
+}
@@ -0,0 +1,21 @@
+package technopolisspring.technopolis.model.index;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import technopolisspring.technopolis.model.pojos.Cursor;
+import technopolisspring.technopolis.model.pojos.ProductSorting;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class CatalogQuery {
+
+    private double minPrice;
+    private double maxPrice = Double.MAX_VALUE;
+    private Long brandId;
+    private Long subCategoryId;
+    private ProductSorting sorting = ProductSorting.ID;
+    private Cursor after;
+
+}
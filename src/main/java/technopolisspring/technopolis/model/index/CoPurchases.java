@@ -0,0 +1,132 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// sparse product to product matrix of how many orders contained both products.
+// history is scanned once in order id ranges by a small pool, new orders are added as they commit.
+// whichever of the two sees an order first counts it, so an order committed late or replayed while
+// the scan runs is counted once
+@Component
+public class CoPurchases {
+
+    public static final int MAX_ALSO_BOUGHT = 50;
+    private static final int ORDERS_PER_BATCH = 10000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Value("${technopolis.also-bought.bootstrap-threads:4}")
+    private int bootstrapThreads;
+    private final Map<Long, Map<Long, Integer>> counts = new ConcurrentHashMap<>(); // <product id, <product id, orders>>
+    private final BitSet counted = new BitSet(); // ids of the orders in the counts
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() throws InterruptedException, ExecutionException {
+        synchronized (counted) {
+            counts.clear();
+            counted.clear();
+        }
+        Long maxOrderId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM `technopolis`.orders", Long.class);
+        long upTo = maxOrderId == null ? 0 : maxOrderId;
+        ExecutorService executor = Executors.newFixedThreadPool(bootstrapThreads);
+        try {
+            List<Future<Map<Long, Map<Long, Integer>>>> batches = new ArrayList<>();
+            for (long from = 0; from < upTo; from += ORDERS_PER_BATCH) {
+                long batchFrom = from;
+                long batchTo = Math.min(from + ORDERS_PER_BATCH, upTo);
+                batches.add(executor.submit(() -> scan(batchFrom, batchTo)));
+            }
+            for (Future<Map<Long, Map<Long, Integer>>> batch : batches) {
+                batch.get().forEach((productId, row) -> {
+                    Map<Long, Integer> merged = counts.computeIfAbsent(productId, id -> new ConcurrentHashMap<>());
+                    row.forEach((otherId, orders) -> merged.merge(otherId, orders, Integer::sum));
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void ordered(long orderId, Collection<Long> productIds) {
+        synchronized (counted) {
+            if (firstSeen(orderId)) {
+                count(counts, new ArrayList<>(new LinkedHashSet<>(productIds)));
+            }
+        }
+    }
+
+    // ids of the products bought together with the product most often, then by id
+    public List<Long> getAlsoBought(long productId, int limit) {
+        Map<Long, Integer> row = counts.getOrDefault(productId, Collections.emptyMap());
+        Comparator<Map.Entry<Long, Integer>> better = Map.Entry.<Long, Integer>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+        // keeps the worst of the best so far on top
+        PriorityQueue<Map.Entry<Long, Integer>> top = new PriorityQueue<>(limit + 1, better);
+        for (Map.Entry<Long, Integer> entry : row.entrySet()) {
+            top.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Long> ids = new ArrayList<>();
+        while (!top.isEmpty()) {
+            ids.add(top.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    // orders in (from, to]
+    private Map<Long, Map<Long, Integer>> scan(long from, long to) {
+        String sql = "SELECT order_id, product_id FROM `technopolis`.orders_have_products " +
+                "WHERE order_id > ? AND order_id <= ? ORDER BY order_id";
+        Map<Long, Map<Long, Integer>> batch = new HashMap<>();
+        List<Long> basket = new ArrayList<>();
+        long[] orderId = {-1};
+        boolean[] skipped = {false};
+        jdbcTemplate.query(sql, result -> {
+            if (result.getLong("order_id") != orderId[0]) {
+                count(batch, basket);
+                basket.clear();
+                orderId[0] = result.getLong("order_id");
+                synchronized (counted) {
+                    skipped[0] = !firstSeen(orderId[0]);
+                }
+            }
+            if (!skipped[0]) {
+                basket.add(result.getLong("product_id"));
+            }
+        }, from, to);
+        count(batch, basket);
+        return batch;
+    }
+
+    // marks the order as counted, false when it already was
+    private boolean firstSeen(long orderId) {
+        int index = Math.toIntExact(orderId);
+        if (counted.get(index)) {
+            return false;
+        }
+        counted.set(index);
+        return true;
+    }
+
+    private static void count(Map<Long, Map<Long, Integer>> counts, List<Long> basket) {
+        for (long productId : basket) {
+            Map<Long, Integer> row = counts.computeIfAbsent(productId, id -> new ConcurrentHashMap<>());
+            for (long otherId : basket) {
+                if (otherId != productId) {
+                    row.merge(otherId, 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.daos.ProductDao;
+import technopolisspring.technopolis.model.dto.DescriptionIndexStatsDto;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// in-memory inverted index over product descriptions, ranked with BM25
+@Component
+public class DescriptionIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MIN_CORRECTED_LENGTH = 3;
+
+    @Autowired
+    private ProductDao productDao;
+    @Value("${technopolis.search.correction-budget-ms:20}")
+    private long correctionBudgetMillis;
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>(); // <term, <product id, term frequency>>
+    private final Map<Long, Map<String, Integer>> documents = new HashMap<>(); // <product id, <term, term frequency>>
+    private final Map<Long, Integer> documentLengths = new HashMap<>();
+    private long totalLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile TermDictionary dictionary = new TermDictionary(new String[0], new int[0]);
+    private volatile boolean dictionaryStale = true;
+    private final AtomicBoolean rebuildingDictionary = new AtomicBoolean();
+
+    // runs before the web server starts accepting requests
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        List<IProduct> products = productDao.getAllActiveProducts();
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            documentLengths.clear();
+            totalLength = 0;
+            for (IProduct product : products) {
+                addDocument(product.getId(), product.getDescription());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        rebuildDictionary();
+    }
+
+    public void add(long productId, String description) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+            addDocument(productId, description);
+            dictionaryStale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+            dictionaryStale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // words that match nothing are swapped for the closest known term before giving up
+    public List<SearchHit> searchTolerant(String query) {
+        return searchTolerant(query, null).getHits();
+    }
+
+    // ranked with the statistics of the snapshot when one is given, so a cursor taken from an earlier page
+    // still seeks into the same order while products come and go
+    public RankedHits searchTolerant(String query, SearchSnapshot snapshot) {
+        RankedHits hits = search(query, snapshot);
+        if (!hits.getHits().isEmpty()) {
+            return hits;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(correctionBudgetMillis);
+        TermDictionary dictionary = getDictionary();
+        List<String> corrected = new ArrayList<>();
+        boolean changed = false;
+        for (String term : tokenize(query)) {
+            if (term.length() >= MIN_CORRECTED_LENGTH && !contains(term)) {
+                String correction = dictionary.correct(term, deadline);
+                if (correction != null) {
+                    term = correction;
+                    changed = true;
+                }
+            }
+            corrected.add(term);
+        }
+        return changed ? search(String.join(" ", corrected), snapshot) : hits;
+    }
+
+    // every term of the query has to be present, like the whole phrase had to be with LIKE
+    public List<SearchHit> search(String query) {
+        return search(query, null).getHits();
+    }
+
+    private RankedHits search(String query, SearchSnapshot snapshot) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        lock.readLock().lock();
+        try {
+            if (snapshot == null) {
+                snapshot = new SearchSnapshot(documentLengths.size(), totalLength, new HashMap<>());
+            }
+            if (terms.isEmpty()) {
+                return new RankedHits(new ArrayList<>(), snapshot);
+            }
+            for (String term : terms) {
+                if (!postings.containsKey(term)) {
+                    return new RankedHits(new ArrayList<>(), snapshot);
+                }
+            }
+            terms.sort(Comparator.comparingInt(term -> postings.get(term).size()));
+            List<Map<Long, Integer>> termPostings = new ArrayList<>();
+            double[] idfs = new double[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                termPostings.add(postings.get(terms.get(i)));
+                // a term the snapshot does not know, like a new correction, is taken as it is now
+                int documentFrequency = snapshot.getDocumentFrequencies()
+                        .computeIfAbsent(terms.get(i), term -> postings.get(term).size());
+                idfs[i] = Math.log(1 + Math.max(0, snapshot.getDocumentCount() - documentFrequency + 0.5) /
+                        (documentFrequency + 0.5));
+            }
+            double averageLength = (double) snapshot.getTotalLength() / snapshot.getDocumentCount();
+            List<SearchHit> hits = new ArrayList<>();
+            candidates:
+            for (long productId : termPostings.get(0).keySet()) {
+                double score = 0;
+                int length = documentLengths.get(productId);
+                for (int i = 0; i < termPostings.size(); i++) {
+                    Integer frequency = termPostings.get(i).get(productId);
+                    if (frequency == null) {
+                        continue candidates;
+                    }
+                    score += idfs[i] * frequency * (K1 + 1) /
+                            (frequency + K1 * (1 - B + B * length / averageLength));
+                }
+                hits.add(new SearchHit(productId, score));
+            }
+            hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed()
+                    .thenComparingLong(SearchHit::getProductId));
+            return new RankedHits(hits, snapshot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // completes the last word of the text with the terms found in the most products
+    public List<String> suggest(String text, int limit) {
+        List<String> tokens = tokenize(text);
+        List<String> suggestions = new ArrayList<>();
+        if (tokens.isEmpty() || !Character.isLetterOrDigit(text.charAt(text.length() - 1))) {
+            return suggestions;
+        }
+        String prefix = tokens.get(tokens.size() - 1);
+        String head = String.join(" ", tokens.subList(0, tokens.size() - 1));
+        for (String term : getDictionary().complete(prefix, limit)) {
+            suggestions.add(head.isEmpty() ? term : head + " " + term);
+        }
+        return suggestions;
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public DescriptionIndexStatsDto getStats() {
+        TermDictionary dictionary = getDictionary();
+        int documentCount;
+        lock.readLock().lock();
+        try {
+            documentCount = documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new DescriptionIndexStatsDto(documentCount, dictionary.size(), dictionary.trigramCount(),
+                dictionary.trigramPostings(), dictionary.estimateBytes());
+    }
+
+    // after a change the old dictionary keeps answering while a new one is built in the background
+    private TermDictionary getDictionary() {
+        if (dictionaryStale && rebuildingDictionary.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    rebuildDictionary();
+                } finally {
+                    rebuildingDictionary.set(false);
+                }
+            });
+        }
+        return dictionary;
+    }
+
+    private void rebuildDictionary() {
+        String[] terms;
+        int[] popularity;
+        lock.readLock().lock();
+        try {
+            dictionaryStale = false;
+            terms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            popularity = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                popularity[i] = postings.get(terms[i]).size();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        dictionary = new TermDictionary(terms, popularity);
+    }
+
+    private boolean contains(String term) {
+        lock.readLock().lock();
+        try {
+            return postings.containsKey(term);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addDocument(long productId, String description) {
+        List<String> tokens = tokenize(description);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(productId, entry.getValue());
+        }
+        documents.put(productId, frequencies);
+        documentLengths.put(productId, tokens.size());
+        totalLength += tokens.size();
+    }
+
+    private void removeDocument(long productId) {
+        Map<String, Integer> frequencies = documents.remove(productId);
+        if (frequencies == null) {
+            return;
+        }
+        for (String term : frequencies.keySet()) {
+            Map<Long, Integer> posting = postings.get(term);
+            posting.remove(productId);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= documentLengths.remove(productId);
+    }
+
+}
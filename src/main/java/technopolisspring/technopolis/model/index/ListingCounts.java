@@ -0,0 +1,152 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
+import technopolisspring.technopolis.model.cache.ProductCache;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// row counts behind the paged listings, kept up to date by the daos and
+// periodically replaced with fresh counts from the db to wash out any drift
+@Component
+public class ListingCounts {
+
+    private static final long ALL = 0;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ProductCache productCache;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    private volatile Map<Long, Integer> products = new ConcurrentHashMap<>();
+    private volatile Map<Long, Integer> productsBySubCategory = new ConcurrentHashMap<>();
+    private volatile Map<Long, Integer> productsByBrand = new ConcurrentHashMap<>();
+    private volatile Map<Long, Integer> reviewsByProduct = new ConcurrentHashMap<>();
+    private volatile Map<Long, Integer> reviewsByUser = new ConcurrentHashMap<>();
+    private volatile Map<Long, Integer> favoritesByUser = new ConcurrentHashMap<>();
+    private volatile Map<Long, Integer> ordersByUser = new ConcurrentHashMap<>();
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        reconcile();
+    }
+
+    // changes made while the counts are being read may be lost, the next run picks them up
+    @Scheduled(fixedDelayString = "${technopolis.listing-counts.reconcile-ms:600000}",
+            initialDelayString = "${technopolis.listing-counts.reconcile-ms:600000}")
+    public void reconcile() {
+        Map<Long, Integer> oldProducts = products;
+        Map<Long, Integer> oldProductsBySubCategory = productsBySubCategory;
+        Map<Long, Integer> oldProductsByBrand = productsByBrand;
+        Map<Long, Integer> oldReviewsByProduct = reviewsByProduct;
+        products = count("SELECT 0, COUNT(*) FROM `technopolis`.products WHERE is_deleted = 0");
+        productsBySubCategory = count("SELECT sub_category_id, COUNT(*) FROM `technopolis`.products " +
+                "WHERE is_deleted = 0 GROUP BY sub_category_id");
+        productsByBrand = count("SELECT brand_id, COUNT(*) FROM `technopolis`.products " +
+                "WHERE is_deleted = 0 GROUP BY brand_id");
+        reviewsByProduct = count("SELECT product_id, COUNT(*) FROM `technopolis`.reviews GROUP BY product_id");
+        // cached catalog responses and their etags carry these totals, so a corrected count must retire them
+        if (!products.equals(oldProducts) || !productsBySubCategory.equals(oldProductsBySubCategory) ||
+                !productsByBrand.equals(oldProductsByBrand) || !reviewsByProduct.equals(oldReviewsByProduct)) {
+            productCache.invalidateAll();
+            catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
+        }
+        reviewsByUser = count("SELECT r.user_id, COUNT(*) FROM `technopolis`.reviews AS r " +
+                "JOIN `technopolis`.products AS p ON r.product_id = p.id " +
+                "WHERE p.is_deleted = 0 GROUP BY r.user_id");
+        favoritesByUser = count("SELECT ulp.user_id, COUNT(*) FROM `technopolis`.users_like_products AS ulp " +
+                "JOIN `technopolis`.products AS p ON ulp.product_id = p.id " +
+                "WHERE p.is_deleted = 0 GROUP BY ulp.user_id");
+        ordersByUser = count("SELECT user_id, COUNT(*) FROM `technopolis`.orders GROUP BY user_id");
+    }
+
+    // either side may be null for an added or removed product
+    public void productChanged(IProduct before, IProduct after) {
+        if (before != null) {
+            countProduct(before, -1);
+        }
+        if (after != null) {
+            countProduct(after, 1);
+        }
+    }
+
+    public void reviewAdded(long productId, long userId) {
+        add(reviewsByProduct, productId, 1);
+        add(reviewsByUser, userId, 1);
+    }
+
+    public void reviewDeleted(long productId, long userId) {
+        add(reviewsByProduct, productId, -1);
+        add(reviewsByUser, userId, -1);
+    }
+
+    public void favoriteAdded(long userId) {
+        add(favoritesByUser, userId, 1);
+    }
+
+    public void favoriteRemoved(long userId) {
+        add(favoritesByUser, userId, -1);
+    }
+
+    public void orderAdded(long userId) {
+        add(ordersByUser, userId, 1);
+    }
+
+    public int countProducts() {
+        return products.getOrDefault(ALL, 0);
+    }
+
+    public int countProductsBySubCategory(long subCategoryId) {
+        return productsBySubCategory.getOrDefault(subCategoryId, 0);
+    }
+
+    public int countProductsByBrand(long brandId) {
+        return productsByBrand.getOrDefault(brandId, 0);
+    }
+
+    public int countReviewsOfProduct(long productId) {
+        return reviewsByProduct.getOrDefault(productId, 0);
+    }
+
+    public int countReviewsOfUser(long userId) {
+        return reviewsByUser.getOrDefault(userId, 0);
+    }
+
+    public int countFavorites(long userId) {
+        return favoritesByUser.getOrDefault(userId, 0);
+    }
+
+    public int countOrders(long userId) {
+        return ordersByUser.getOrDefault(userId, 0);
+    }
+
+    private void countProduct(IProduct product, int delta) {
+        add(products, ALL, delta);
+        add(productsBySubCategory, product.getSubCategoryId(), delta);
+        add(productsByBrand, product.getBrandId(), delta);
+    }
+
+    private void add(Map<Long, Integer> counts, long key, int delta) {
+        counts.compute(key, (k, count) -> {
+            int updated = (count == null ? 0 : count) + delta;
+            return updated > 0 ? updated : null;
+        });
+    }
+
+    private Map<Long, Integer> count(String sql) {
+        Map<Long, Integer> counts = new ConcurrentHashMap<>();
+        jdbcTemplate.query(sql, resultSet -> {
+            counts.put(resultSet.getLong(1), resultSet.getInt(2));
+        });
+        return counts;
+    }
+
+}
@@ -0,0 +1,101 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
+import technopolisspring.technopolis.model.cache.ProductCache;
+import technopolisspring.technopolis.model.daos.ProductDao;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// discounts of the offers whose window is open right now, so product rows only need their offer_id.
+// every offer gets a task at its start and one at its end, which reprice its products when they fire
+@Component
+public class OfferPricing {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TaskScheduler taskScheduler;
+    @Autowired
+    private ProductDao productDao;
+    @Autowired
+    private ProductCache productCache;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    private final Map<Long, Double> active = new ConcurrentHashMap<>(); // <offer id, discount percent>
+
+    // the other indexes price their products while loading, so the offers have to be known first
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        String sql = "SELECT id, discount_percent, start_date, end_date FROM `technopolis`.offers " +
+                "WHERE end_date > NOW()";
+        active.clear();
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.query(sql, result -> {
+            long offerId = result.getLong("id");
+            double discountPercent = result.getDouble("discount_percent");
+            LocalDateTime start = result.getTimestamp("start_date").toLocalDateTime();
+            LocalDateTime end = result.getTimestamp("end_date").toLocalDateTime();
+            if (!start.isAfter(now)) {
+                active.put(offerId, discountPercent);
+            } else {
+                taskScheduler.schedule(() -> activate(offerId, discountPercent), Timestamp.valueOf(start));
+            }
+            taskScheduler.schedule(() -> expire(offerId), Timestamp.valueOf(end));
+        });
+    }
+
+    public void offerAdded(long offerId, double discountPercent, LocalDateTime start, LocalDateTime end) {
+        if (!end.isAfter(LocalDateTime.now())) {
+            return;
+        }
+        // a start in the past runs right away
+        taskScheduler.schedule(() -> activate(offerId, discountPercent), Timestamp.valueOf(start));
+        taskScheduler.schedule(() -> expire(offerId), Timestamp.valueOf(end));
+    }
+
+    // null when the offer has not started yet or is already over
+    public Double getDiscount(long offerId) {
+        return active.get(offerId);
+    }
+
+    // the discount of the offer in the column as an sql expression, 0 outside the active offers
+    public String discountSql(String offerColumn) {
+        if (active.isEmpty()) {
+            return "0";
+        }
+        StringBuilder sql = new StringBuilder("CASE ").append(offerColumn);
+        active.forEach((offerId, discountPercent) ->
+                sql.append(" WHEN ").append(offerId).append(" THEN ").append(discountPercent));
+        return sql.append(" ELSE 0 END").toString();
+    }
+
+    private void activate(long offerId, double discountPercent) {
+        active.put(offerId, discountPercent);
+        offerChanged(offerId);
+    }
+
+    private void expire(long offerId) {
+        if (active.remove(offerId) != null) {
+            offerChanged(offerId);
+        }
+    }
+
+    private void offerChanged(long offerId) {
+        productDao.reindexOffer(offerId);
+        productCache.invalidateAll();
+        catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
+    }
+
+}
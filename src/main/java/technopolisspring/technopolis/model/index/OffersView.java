@@ -0,0 +1,175 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.dto.ProductInOfferDto;
+import technopolisspring.technopolis.model.dto.ProductPageDto;
+import technopolisspring.technopolis.model.pojos.Cursor;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.*;
+
+// the products of the running offers, grouped by offer and listed by discount percent descending, then id.
+// fed by the catalog index, which sees every product change, so an offer starting, ending or getting
+// products only touches its own group. the lists are rebuilt for the changed groups on the next read
+@Component
+public class OffersView {
+
+    @Autowired
+    private OfferPricing offerPricing;
+    private final Map<Long, TreeMap<Long, IProduct>> byOffer = new HashMap<>(); // <offer id, <product id, product>>
+    private final Map<Long, Long> offerOf = new HashMap<>(); // <product id, offer id>
+    private final Set<Long> changedOffers = new HashSet<>();
+    private volatile boolean stale;
+    private volatile View view = new View(new ArrayList<>(), new HashMap<>(), new HashMap<>());
+
+    public synchronized void load(Collection<IProduct> products) {
+        byOffer.clear();
+        offerOf.clear();
+        changedOffers.clear();
+        changedOffers.addAll(view.byOffer.keySet());
+        stale = true;
+        for (IProduct product : products) {
+            put(product);
+        }
+    }
+
+    // only discounted products belong to a running offer
+    public synchronized void put(IProduct product) {
+        remove(product.getId());
+        if (product instanceof ProductInOfferDto) {
+            long offerId = product.getOfferId();
+            byOffer.computeIfAbsent(offerId, id -> new TreeMap<>()).put(product.getId(), product);
+            offerOf.put(product.getId(), offerId);
+            changedOffers.add(offerId);
+            stale = true;
+        }
+    }
+
+    public synchronized void remove(long productId) {
+        Long offerId = offerOf.remove(productId);
+        if (offerId != null) {
+            TreeMap<Long, IProduct> products = byOffer.get(offerId);
+            products.remove(productId);
+            if (products.isEmpty()) {
+                byOffer.remove(offerId);
+            }
+            changedOffers.add(offerId);
+            stale = true;
+        }
+    }
+
+    public List<IProduct> getProducts(int skip, int limit) {
+        return slice(getView().all, skip, limit);
+    }
+
+    public ProductPageDto getProducts(Cursor after, int limit) {
+        View view = getView();
+        List<IProduct> all = view.all;
+        int from = 0;
+        if (after != null) {
+            // first entry past the cursor in (discount descending, id ascending)
+            int high = all.size();
+            while (from < high) {
+                int middle = (from + high) >>> 1;
+                IProduct product = all.get(middle);
+                double discount = view.discounts.get(product.getOfferId());
+                if (discount > after.getSortKey() ||
+                        (discount == after.getSortKey() && product.getId() <= after.getId())) {
+                    from = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+        }
+        List<IProduct> page = slice(all, from, limit);
+        String nextCursor = null;
+        if (from + limit < all.size()) {
+            IProduct last = page.get(page.size() - 1);
+            nextCursor = new Cursor(view.discounts.get(last.getOfferId()), last.getId()).encode();
+        }
+        return new ProductPageDto(page, nextCursor);
+    }
+
+    public List<IProduct> getProductsInOffer(long offerId, int skip, int limit) {
+        return slice(getView().byOffer.getOrDefault(offerId, Collections.emptyList()), skip, limit);
+    }
+
+    public int countProducts() {
+        return getView().all.size();
+    }
+
+    public int countProductsInOffer(long offerId) {
+        return getView().byOffer.getOrDefault(offerId, Collections.emptyList()).size();
+    }
+
+    private List<IProduct> slice(List<IProduct> products, int skip, int limit) {
+        int from = Math.min(products.size(), skip);
+        return new ArrayList<>(products.subList(from, Math.min(products.size(), from + limit)));
+    }
+
+    private View getView() {
+        if (stale) {
+            synchronized (this) {
+                if (stale) {
+                    stale = false;
+                    Map<Long, List<IProduct>> lists = new HashMap<>(view.byOffer);
+                    Map<Long, Double> discounts = new HashMap<>(view.discounts);
+                    for (long offerId : changedOffers) {
+                        TreeMap<Long, IProduct> products = byOffer.get(offerId);
+                        Double discount = offerPricing.getDiscount(offerId);
+                        if (products == null || discount == null) {
+                            lists.remove(offerId);
+                            discounts.remove(offerId);
+                        } else {
+                            lists.put(offerId, new ArrayList<>(products.values()));
+                            discounts.put(offerId, discount);
+                        }
+                    }
+                    changedOffers.clear();
+                    view = new View(concatenate(lists, discounts), lists, discounts);
+                }
+            }
+        }
+        return view;
+    }
+
+    // the products of an offer share its discount and are already by id, so only the offers get sorted.
+    // offers with the same discount are merged by id to keep the order the cursors seek in
+    private List<IProduct> concatenate(Map<Long, List<IProduct>> lists, Map<Long, Double> discounts) {
+        List<Long> offerIds = new ArrayList<>(lists.keySet());
+        offerIds.sort(Comparator.comparingDouble((Long offerId) -> -discounts.get(offerId)));
+        List<IProduct> all = new ArrayList<>();
+        for (int from = 0; from < offerIds.size(); ) {
+            double discount = discounts.get(offerIds.get(from));
+            int to = from + 1;
+            while (to < offerIds.size() && discounts.get(offerIds.get(to)) == discount) {
+                to++;
+            }
+            int start = all.size();
+            for (int i = from; i < to; i++) {
+                all.addAll(lists.get(offerIds.get(i)));
+            }
+            if (to - from > 1) {
+                all.subList(start, all.size()).sort(Comparator.comparingLong(IProduct::getId));
+            }
+            from = to;
+        }
+        return all;
+    }
+
+    private static class View {
+
+        private final List<IProduct> all;
+        private final Map<Long, List<IProduct>> byOffer;
+        private final Map<Long, Double> discounts; // <offer id, discount percent>
+
+        private View(List<IProduct> all, Map<Long, List<IProduct>> byOffer, Map<Long, Double> discounts) {
+            this.all = all;
+            this.byOffer = byOffer;
+            this.discounts = discounts;
+        }
+
+    }
+
+}
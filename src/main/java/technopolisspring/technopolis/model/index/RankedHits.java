@@ -0,0 +1,15 @@
+package technopolisspring.technopolis.model.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class RankedHits {
+
+    private List<SearchHit> hits;
+    private SearchSnapshot snapshot;
+
+}
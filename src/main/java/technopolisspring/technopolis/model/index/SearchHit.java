@@ -0,0 +1,13 @@
+package technopolisspring.technopolis.model.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SearchHit {
+
+    private long productId;
+    private double score;
+
+}
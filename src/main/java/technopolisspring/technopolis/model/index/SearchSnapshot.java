@@ -0,0 +1,58 @@
+package technopolisspring.technopolis.model.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// the corpus statistics a search was ranked with. scores only stay comparable between pages
+// when every page is ranked with the statistics of the first one
+@Getter
+@AllArgsConstructor
+public class SearchSnapshot {
+
+    private static final String SEPARATOR = ",";
+    private static final String TERM_SEPARATOR = "=";
+
+    private int documentCount;
+    private long totalLength;
+    private Map<String, Integer> documentFrequencies; // <term, products with the term>
+
+    public String encode() {
+        StringBuilder raw = new StringBuilder().append(documentCount).append(SEPARATOR).append(totalLength);
+        documentFrequencies.forEach((term, frequency) ->
+                raw.append(SEPARATOR).append(term).append(TERM_SEPARATOR).append(frequency));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // returns null when the snapshot was not produced by encode(), terms never contain the separators
+    public static SearchSnapshot decode(String snapshot) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(snapshot), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if (parts.length < 2) {
+                return null;
+            }
+            Map<String, Integer> documentFrequencies = new HashMap<>();
+            for (int i = 2; i < parts.length; i++) {
+                String[] term = parts[i].split(TERM_SEPARATOR);
+                if (term.length != 2) {
+                    return null;
+                }
+                documentFrequencies.put(term[0], Integer.parseInt(term[1]));
+            }
+            int documentCount = Integer.parseInt(parts[0]);
+            long totalLength = Long.parseLong(parts[1]);
+            if (documentCount <= 0 || totalLength < 0) {
+                return null;
+            }
+            return new SearchSnapshot(documentCount, totalLength, documentFrequencies);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
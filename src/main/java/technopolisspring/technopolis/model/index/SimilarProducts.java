@@ -0,0 +1,217 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// every product of a sub category encoded as the sorted ids of its attribute values and brand plus a price band,
+// neighbours are ranked by the cosine of the shared features and how close the bands are.
+// a change marks its sub category stale, the old vectors keep answering until the rebuilt ones replace them
+@Component
+public class SimilarProducts {
+
+    public static final int MAX_SIMILAR = 50;
+    // each band is this many times pricier than the one below it
+    private static final double PRICE_BAND_RATIO = 1.25;
+    private static final double PRICE_WEIGHT = 0.5;
+    private static final String SQL = "SELECT p.id, p.brand_id, p.sub_category_id, p.price, pa.attribute_id, pa.value\n" +
+            "FROM `technopolis`.products AS p\n" +
+            "LEFT JOIN `technopolis`.products_have_attriubtes AS pa ON pa.product_id = p.id\n" +
+            "WHERE p.is_deleted = 0";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CatalogIndex catalogIndex;
+    private final Map<Long, Vectors> bySubCategory = new ConcurrentHashMap<>();
+    private final Map<Long, Long> subCategoryOf = new ConcurrentHashMap<>(); // <product id, sub category id>
+    private final Set<Long> stale = ConcurrentHashMap.newKeySet();
+    private final Set<Long> rebuilding = ConcurrentHashMap.newKeySet();
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        Map<Long, Map<Long, Row>> rows = new HashMap<>();
+        jdbcTemplate.query(SQL, result -> {
+            read(rows, result);
+        });
+        bySubCategory.clear();
+        subCategoryOf.clear();
+        stale.clear();
+        rows.forEach(this::publish);
+    }
+
+    // call after the product, or its attributes, changed
+    public void productChanged(long productId) {
+        Long subCategoryId = subCategoryOf.get(productId);
+        if (subCategoryId != null) {
+            stale.add(subCategoryId);
+        }
+        IProduct product = catalogIndex.get(productId);
+        if (product != null) {
+            stale.add(product.getSubCategoryId());
+        }
+    }
+
+    public void allChanged() {
+        stale.addAll(bySubCategory.keySet());
+    }
+
+    // ids of the products closest to the product, best first
+    public List<Long> getSimilar(long productId, int limit) {
+        Long subCategoryId = subCategoryOf.get(productId);
+        if (subCategoryId == null) {
+            IProduct product = catalogIndex.get(productId);
+            if (product == null) {
+                return new ArrayList<>();
+            }
+            subCategoryId = product.getSubCategoryId();
+        }
+        Vectors vectors = getVectors(subCategoryId);
+        Integer position = vectors == null ? null : vectors.positions.get(productId);
+        if (position == null) {
+            return new ArrayList<>();
+        }
+        return vectors.nearest(position, limit);
+    }
+
+    private Vectors getVectors(long subCategoryId) {
+        if (stale.contains(subCategoryId) && rebuilding.add(subCategoryId)) {
+            stale.remove(subCategoryId);
+            CompletableFuture.runAsync(() -> {
+                try {
+                    rebuild(subCategoryId);
+                } finally {
+                    rebuilding.remove(subCategoryId);
+                }
+            });
+        }
+        return bySubCategory.get(subCategoryId);
+    }
+
+    private void rebuild(long subCategoryId) {
+        Map<Long, Map<Long, Row>> rows = new HashMap<>();
+        jdbcTemplate.query(SQL + " AND p.sub_category_id = ?", result -> {
+            read(rows, result);
+        }, subCategoryId);
+        Vectors old = bySubCategory.get(subCategoryId);
+        Vectors vectors = publish(subCategoryId, rows.getOrDefault(subCategoryId, new HashMap<>()));
+        if (old != null) {
+            for (long productId : old.ids) {
+                if (!vectors.positions.containsKey(productId)) {
+                    subCategoryOf.remove(productId, subCategoryId);
+                }
+            }
+        }
+    }
+
+    private Vectors publish(long subCategoryId, Map<Long, Row> rows) {
+        Vectors vectors = new Vectors(rows);
+        bySubCategory.put(subCategoryId, vectors);
+        for (long productId : vectors.ids) {
+            subCategoryOf.put(productId, subCategoryId);
+        }
+        return vectors;
+    }
+
+    private static void read(Map<Long, Map<Long, Row>> rows, ResultSet result) throws SQLException {
+        Row row = rows.computeIfAbsent(result.getLong("sub_category_id"), id -> new HashMap<>())
+                .computeIfAbsent(result.getLong("id"), id -> new Row());
+        row.brandId = result.getLong("brand_id");
+        row.price = result.getDouble("price");
+        String value = result.getString("value");
+        if (value != null) {
+            row.features.add(result.getLong("attribute_id") + "=" + value.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static class Row {
+
+        private long brandId;
+        private double price;
+        private final List<String> features = new ArrayList<>();
+
+    }
+
+    private static class Vectors {
+
+        private final long[] ids;
+        private final int[][] features; // sorted
+        private final int[] priceBands;
+        private final Map<Long, Integer> positions = new HashMap<>();
+
+        private Vectors(Map<Long, Row> rows) {
+            int size = rows.size();
+            this.ids = new long[size];
+            this.features = new int[size][];
+            this.priceBands = new int[size];
+            Map<String, Integer> featureIds = new HashMap<>();
+            int position = 0;
+            for (Map.Entry<Long, Row> entry : rows.entrySet()) {
+                Row row = entry.getValue();
+                Set<Integer> encoded = new TreeSet<>();
+                for (String feature : row.features) {
+                    encoded.add(featureIds.computeIfAbsent(feature, f -> featureIds.size()));
+                }
+                encoded.add(featureIds.computeIfAbsent("brand=" + row.brandId, f -> featureIds.size()));
+                ids[position] = entry.getKey();
+                features[position] = encoded.stream().mapToInt(Integer::intValue).toArray();
+                priceBands[position] = (int) Math.floor(Math.log(Math.max(row.price, 1)) / Math.log(PRICE_BAND_RATIO));
+                positions.put(entry.getKey(), position);
+                position++;
+            }
+        }
+
+        private List<Long> nearest(int position, int limit) {
+            double[] scores = new double[ids.length];
+            // keeps the worst of the best so far on top
+            PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (a, b) -> scores[a] != scores[b] ?
+                    Double.compare(scores[a], scores[b]) : Long.compare(ids[b], ids[a]));
+            for (int other = 0; other < ids.length; other++) {
+                if (other == position) {
+                    continue;
+                }
+                scores[other] = similarity(position, other);
+                top.add(other);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<Long> nearest = new ArrayList<>();
+            while (!top.isEmpty()) {
+                nearest.add(ids[top.poll()]);
+            }
+            Collections.reverse(nearest);
+            return nearest;
+        }
+
+        private double similarity(int a, int b) {
+            int[] first = features[a];
+            int[] second = features[b];
+            int shared = 0;
+            for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+                if (first[i] == second[j]) {
+                    shared++;
+                    i++;
+                    j++;
+                } else if (first[i] < second[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            double cosine = shared / Math.sqrt((double) first.length * second.length);
+            return cosine + PRICE_WEIGHT / (1 + Math.abs(priceBands[a] - priceBands[b]));
+        }
+
+    }
+
+}
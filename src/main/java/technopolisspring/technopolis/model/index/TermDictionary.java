@@ -0,0 +1,188 @@
+package technopolisspring.technopolis.model.index;
+
+import java.util.*;
+
+// sorted terms of the description index with the number of products containing each of them,
+// plus a trigram index over the terms for finding the ones a misspelled word was meant to be
+class TermDictionary {
+
+    private static final char PAD = '$';
+    private static final int MAX_TRIGRAMS_PER_EDIT = 4;
+    private static final int MAX_CANDIDATES = 64;
+    // rough sizes of a 64 bit jvm with compressed oops, only used for reporting
+    private static final int STRING_BYTES = 56;
+    private static final int MAP_ENTRY_BYTES = 48;
+    private static final int ARRAY_BYTES = 16;
+
+    private final String[] terms;
+    private final int[] popularity;
+    private final Map<String, int[]> trigrams; // <trigram, sorted positions of the terms containing it>
+    private final long trigramPostings;
+
+    TermDictionary(String[] terms, int[] popularity) {
+        this.terms = terms;
+        this.popularity = popularity;
+        Map<String, int[]> sizes = new HashMap<>();
+        for (String term : terms) {
+            for (String trigram : trigrams(term)) {
+                sizes.computeIfAbsent(trigram, t -> new int[1])[0]++;
+            }
+        }
+        this.trigrams = new HashMap<>(sizes.size() * 2);
+        long postings = 0;
+        for (Map.Entry<String, int[]> entry : sizes.entrySet()) {
+            trigrams.put(entry.getKey(), new int[entry.getValue()[0]]);
+            postings += entry.getValue()[0];
+            entry.getValue()[0] = 0;
+        }
+        this.trigramPostings = postings;
+        for (int i = 0; i < terms.length; i++) {
+            for (String trigram : trigrams(terms[i])) {
+                int[] filled = sizes.get(trigram);
+                trigrams.get(trigram)[filled[0]++] = i;
+            }
+        }
+    }
+
+    List<String> complete(String prefix, int limit) {
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        PriorityQueue<Integer> best = new PriorityQueue<>(
+                Comparator.comparingInt((Integer i) -> popularity[i]).thenComparing(i -> -i));
+        for (int i = from; i < to; i++) {
+            best.add(i);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<String> completions = new ArrayList<>();
+        while (!best.isEmpty()) {
+            completions.add(terms[best.poll()]);
+        }
+        Collections.reverse(completions);
+        return completions;
+    }
+
+    // closest term within the allowed edits, the more common one on a tie, null if nothing is close
+    // enough or the deadline (System.nanoTime) passes before a candidate is confirmed
+    String correct(String word, long deadline) {
+        int maxDistance = word.length() <= 4 ? 1 : 2;
+        Set<String> wordTrigrams = trigrams(word);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String trigram : wordTrigrams) {
+            int[] positions = trigrams.get(trigram);
+            if (positions == null) {
+                continue;
+            }
+            for (int position : positions) {
+                shared.merge(position, 1, Integer::sum);
+            }
+            if (System.nanoTime() > deadline) {
+                return null;
+            }
+        }
+        // with one pad on each side a letter sits in up to three trigrams of the word, so a substitution,
+        // insertion or deletion breaks at most three and a swap of two neighbours, which spans four, at most four
+        int minShared = wordTrigrams.size() - MAX_TRIGRAMS_PER_EDIT * maxDistance;
+        List<Integer> candidates = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+            if (entry.getValue() >= minShared &&
+                    Math.abs(terms[entry.getKey()].length() - word.length()) <= maxDistance) {
+                candidates.add(entry.getKey());
+            }
+        }
+        candidates.sort(Comparator.comparingInt((Integer i) -> shared.get(i)).reversed()
+                .thenComparing(Comparator.comparingInt((Integer i) -> popularity[i]).reversed()));
+        String best = null;
+        int bestDistance = maxDistance + 1;
+        int bestPopularity = 0;
+        for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES; i++) {
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+            int position = candidates.get(i);
+            int distance = distance(word, terms[position], maxDistance);
+            if (distance < bestDistance || (distance == bestDistance && popularity[position] > bestPopularity)) {
+                best = terms[position];
+                bestDistance = distance;
+                bestPopularity = popularity[position];
+            }
+        }
+        return best;
+    }
+
+    int size() {
+        return terms.length;
+    }
+
+    int trigramCount() {
+        return trigrams.size();
+    }
+
+    long trigramPostings() {
+        return trigramPostings;
+    }
+
+    long estimateBytes() {
+        long bytes = ARRAY_BYTES * 2L + 4L * terms.length + 4L * popularity.length;
+        for (String term : terms) {
+            bytes += STRING_BYTES + term.length();
+        }
+        bytes += (long) trigrams.size() * (MAP_ENTRY_BYTES + STRING_BYTES + ARRAY_BYTES) + 4L * trigramPostings;
+        return bytes;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (terms[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static Set<String> trigrams(String term) {
+        String padded = PAD + term + PAD;
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    // edit distance counting a swap of two neighbouring letters as one edit, gives up above max
+    private static int distance(String a, String b, int max) {
+        int[] previousRow = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            row[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, row[j] + 1), row[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], previousRow[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] oldest = previousRow;
+            previousRow = row;
+            row = current;
+            current = oldest;
+        }
+        return row[b.length()];
+    }
+
+}
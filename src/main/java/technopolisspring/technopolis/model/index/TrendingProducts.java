@@ -0,0 +1,228 @@
+package technopolisspring.technopolis.model.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.pojos.IProduct;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// views, basket adds and sold units counted with exponential decay in bounded space-saving summaries,
+// one for the whole catalog and one per sub category. requests only drop an event in a lock-free queue,
+// a single scheduled thread folds the queue into the summaries and publishes the new top lists
+@Component
+public class TrendingProducts {
+
+    public static final int MAX_TRENDING = 50;
+    private static final int VIEW_WEIGHT = 1;
+    private static final int BASKET_WEIGHT = 3;
+    private static final int ORDER_WEIGHT = 5;
+    private static final int MAX_PENDING = 100000;
+    private static final int GLOBAL_CAPACITY = 1000;
+    private static final int SUB_CATEGORY_CAPACITY = 100;
+    // weights grow as exp(age / tau), the summaries are rescaled before that overflows a double
+    private static final double MAX_EXPONENT = 600;
+
+    @Autowired
+    private CatalogIndex catalogIndex;
+    private final double tauMillis;
+    private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    // only touched by the draining thread
+    private long landmark = System.currentTimeMillis();
+    private final Summary global = new Summary(GLOBAL_CAPACITY);
+    private final Map<Long, Summary> bySubCategory = new HashMap<>();
+    // what the endpoint reads
+    private volatile List<Long> globalTop = new ArrayList<>();
+    private final Map<Long, List<Long>> subCategoryTop = new ConcurrentHashMap<>();
+
+    public TrendingProducts(@Value("${technopolis.trending.half-life-minutes:60}") long halfLifeMinutes) {
+        this.tauMillis = halfLifeMinutes * 60 * 1000 / Math.log(2);
+    }
+
+    public void viewed(long productId) {
+        record(productId, VIEW_WEIGHT);
+    }
+
+    public void addedToBasket(long productId) {
+        record(productId, BASKET_WEIGHT);
+    }
+
+    public void ordered(long productId, int quantity) {
+        record(productId, ORDER_WEIGHT * quantity);
+    }
+
+    // ids of the trending products, best first
+    public List<Long> getTrending(Long subCategoryId, int limit) {
+        List<Long> top = subCategoryId == null ? globalTop :
+                subCategoryTop.getOrDefault(subCategoryId, Collections.emptyList());
+        return new ArrayList<>(top.subList(0, Math.min(limit, top.size())));
+    }
+
+    @Scheduled(fixedDelayString = "${technopolis.trending.drain-ms:1000}")
+    public void drain() {
+        Set<Long> touched = new HashSet<>();
+        Event event;
+        while ((event = pending.poll()) != null) {
+            pendingSize.decrementAndGet();
+            IProduct product = catalogIndex.get(event.productId);
+            if (product == null) {
+                continue;
+            }
+            double exponent = (event.time - landmark) / tauMillis;
+            if (exponent > MAX_EXPONENT) {
+                rescale(event.time);
+                exponent = 0;
+            }
+            double weight = event.weight * Math.exp(exponent);
+            global.add(event.productId, weight);
+            bySubCategory.computeIfAbsent(product.getSubCategoryId(), id -> new Summary(SUB_CATEGORY_CAPACITY))
+                    .add(event.productId, weight);
+            touched.add(product.getSubCategoryId());
+        }
+        if (!touched.isEmpty()) {
+            globalTop = global.top(MAX_TRENDING);
+            for (long subCategoryId : touched) {
+                subCategoryTop.put(subCategoryId, bySubCategory.get(subCategoryId).top(MAX_TRENDING));
+            }
+        }
+    }
+
+    private void record(long productId, int weight) {
+        // under a flood the extra events are dropped rather than queued without bound
+        if (pendingSize.incrementAndGet() > MAX_PENDING) {
+            pendingSize.decrementAndGet();
+            return;
+        }
+        pending.add(new Event(productId, weight, System.currentTimeMillis()));
+    }
+
+    private void rescale(long now) {
+        double factor = Math.exp(-(now - landmark) / tauMillis);
+        global.scale(factor);
+        for (Summary summary : bySubCategory.values()) {
+            summary.scale(factor);
+        }
+        landmark = now;
+    }
+
+    private static class Event {
+
+        private final long productId;
+        private final int weight;
+        private final long time;
+
+        private Event(long productId, int weight, long time) {
+            this.productId = productId;
+            this.weight = weight;
+            this.time = time;
+        }
+
+    }
+
+    // space-saving: a full summary hands its smallest counter over to the new product,
+    // which inherits the count, so a frequent product can never be pushed out.
+    // the counters are an indexed min-heap, so the smallest is found in O(1) and every add is O(log capacity)
+    private static class Summary {
+
+        private final long[] productIds;
+        private final double[] counts;
+        private final Map<Long, Integer> positions = new HashMap<>(); // <product id, index in the heap>
+        private int size;
+
+        private Summary(int capacity) {
+            this.productIds = new long[capacity];
+            this.counts = new double[capacity];
+        }
+
+        private void add(long productId, double weight) {
+            Integer position = positions.get(productId);
+            if (position == null && size < productIds.length) {
+                // a new leaf, which may be smaller than its parents
+                position = size++;
+                productIds[position] = productId;
+                counts[position] = weight;
+                positions.put(productId, position);
+                siftUp(position);
+                return;
+            }
+            if (position == null) {
+                // the smallest counter is at the root
+                position = 0;
+                positions.remove(productIds[0]);
+                productIds[0] = productId;
+                positions.put(productId, 0);
+            }
+            // weights are positive, so the counter can only move away from the root
+            counts[position] += weight;
+            siftDown(position);
+        }
+
+        // the same factor for every counter keeps the heap order
+        private void scale(double factor) {
+            for (int i = 0; i < size; i++) {
+                counts[i] *= factor;
+            }
+        }
+
+        private List<Long> top(int limit) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(counts[b], counts[a]));
+            List<Long> top = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, size); i++) {
+                top.add(productIds[order[i]]);
+            }
+            return top;
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (counts[parent] <= counts[position]) {
+                    return;
+                }
+                swap(position, parent);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                int smallest = position;
+                int left = 2 * position + 1;
+                int right = left + 1;
+                if (left < size && counts[left] < counts[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && counts[right] < counts[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == position) {
+                    return;
+                }
+                swap(position, smallest);
+                position = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long productId = productIds[a];
+            double count = counts[a];
+            productIds[a] = productIds[b];
+            counts[a] = counts[b];
+            productIds[b] = productId;
+            counts[b] = count;
+            positions.put(productIds[a], a);
+            positions.put(productIds[b], b);
+        }
+
+    }
+
+}
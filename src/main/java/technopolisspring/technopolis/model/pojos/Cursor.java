@@ -0,0 +1,43 @@
+package technopolisspring.technopolis.model.pojos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+@Getter
+@AllArgsConstructor
+public class Cursor {
+
+    private static final String SEPARATOR = ":";
+
+    private double sortKey;
+    private long id;
+    private String snapshot; // what the sort key was computed from, null when it never changes
+
+    public Cursor(double sortKey, long id) {
+        this(sortKey, id, null);
+    }
+
+    public String encode() {
+        String raw = sortKey + SEPARATOR + id + (snapshot == null ? "" : SEPARATOR + snapshot);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // returns null when the cursor was not produced by encode()
+    public static Cursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if (parts.length != 2 && parts.length != 3) {
+                return null;
+            }
+            return new Cursor(Double.parseDouble(parts[0]), Long.parseLong(parts[1]),
+                    parts.length == 3 ? parts[2] : null);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
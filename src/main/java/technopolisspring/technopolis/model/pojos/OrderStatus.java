@@ -0,0 +1,9 @@
+package technopolisspring.technopolis.model.pojos;
+
+public enum OrderStatus {
+
+    QUEUED,
+    PERSISTED,
+    FAILED
+
+}
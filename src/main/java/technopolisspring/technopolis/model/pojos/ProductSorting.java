@@ -0,0 +1,32 @@
+package technopolisspring.technopolis.model.pojos;
+
+import lombok.Getter;
+
+@Getter
+public enum ProductSorting {
+
+    ID("p.id ASC"),
+    // effective_price has to be selected by the query
+    PRICE_ASC("effective_price ASC, p.id ASC"),
+    PRICE_DESC("effective_price DESC, p.id DESC"),
+    NEWEST("p.id DESC"),
+    BEST_SELLING("(SELECT COALESCE(SUM(ohp.quantity), 0) FROM `technopolis`.orders_have_products AS ohp " +
+            "WHERE ohp.product_id = p.id) DESC, p.id ASC");
+
+    private final String orderBy;
+
+    ProductSorting(String orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    // null when the name is not a sorting
+    public static ProductSorting parse(String name) {
+        for (ProductSorting sorting : values()) {
+            if (sorting.name().equalsIgnoreCase(name.trim())) {
+                return sorting;
+            }
+        }
+        return null;
+    }
+
+}
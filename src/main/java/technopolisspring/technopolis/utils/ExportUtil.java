@@ -0,0 +1,108 @@
+package technopolisspring.technopolis.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.daos.ProductDao;
+import technopolisspring.technopolis.model.dto.AttributeValueDto;
+import technopolisspring.technopolis.model.dto.ExportProductDto;
+import technopolisspring.technopolis.model.dto.ProductWithAttributesInOfferDto;
+import technopolisspring.technopolis.model.pojos.IProductWithAttributes;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Component
+public class ExportUtil {
+
+    public static final String NDJSON = "ndjson";
+    public static final String CSV = "csv";
+    private static final int CHUNK_SIZE = 1000;
+    // the importer reads the same columns back, price is the price before any discount
+    public static final String CSV_HEADER = "id,description,price,brand_id,sub_category_id,offer_id,attributes";
+
+    @Autowired
+    private ProductDao productDao;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // each product is written out as it is read, so memory stays at one product however big the catalog is
+    public void exportProducts(String format, OutputStream outputStream) throws IOException, SQLException {
+        OutputStream out = new BufferedOutputStream(outputStream);
+        if (format.equals(CSV)) {
+            out.write((CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        long[] lastId = {0};
+        int exported;
+        do {
+            exported = productDao.exportProducts(lastId[0], CHUNK_SIZE, product -> {
+                write(format, toExport(product), out);
+                lastId[0] = product.getId();
+            });
+            out.flush();
+        } while (exported == CHUNK_SIZE);
+    }
+
+    private void write(String format, ExportProductDto product, OutputStream out) throws IOException {
+        if (format.equals(CSV)) {
+            out.write(toCsv(product).getBytes(StandardCharsets.UTF_8));
+        } else {
+            out.write(objectMapper.writeValueAsBytes(product));
+            out.write('\n');
+        }
+    }
+
+    // a running offer only changes the price shown, the export keeps the price it was saved with
+    private ExportProductDto toExport(IProductWithAttributes product) {
+        double price = product.getPrice();
+        if (product instanceof ProductWithAttributesInOfferDto) {
+            price = ((ProductWithAttributesInOfferDto) product).getPriceBeforeDiscount();
+        }
+        List<AttributeValueDto> attributes = product.getAttributes().stream()
+                .map(attribute -> new AttributeValueDto(attribute.getId(), attribute.getValue()))
+                .collect(Collectors.toList());
+        return new ExportProductDto(product.getId(), product.getDescription(), price, product.getBrandId(),
+                product.getSubCategoryId(), product.getOfferId(), attributes);
+    }
+
+    private String toCsv(ExportProductDto product) {
+        String attributes = product.getAttributes().stream()
+                .map(attribute -> attribute.getId() + "=" + escapeAttributeValue(attribute.getValue()))
+                .collect(Collectors.joining(";"));
+        return product.getId() + "," +
+                escapeCsv(product.getDescription()) + "," +
+                product.getPrice() + "," +
+                product.getBrandId() + "," +
+                product.getSubCategoryId() + "," +
+                product.getOfferId() + "," +
+                escapeCsv(attributes) + "\n";
+    }
+
+    // the attributes column is "id=value;id=value", so a backslash, ';' or '=' in a value gets a backslash before it
+    static String escapeAttributeValue(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '\\' || c == ';' || c == '=') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+}
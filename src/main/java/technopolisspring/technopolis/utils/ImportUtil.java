@@ -0,0 +1,222 @@
+package technopolisspring.technopolis.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.controller.AdminController;
+import technopolisspring.technopolis.model.daos.AttributeDao;
+import technopolisspring.technopolis.model.daos.CategoryDao;
+import technopolisspring.technopolis.model.daos.ProductDao;
+import technopolisspring.technopolis.model.dto.AttributeValueDto;
+import technopolisspring.technopolis.model.dto.AttributeWithoutValueDto;
+import technopolisspring.technopolis.model.dto.ImportProductDto;
+import technopolisspring.technopolis.model.dto.ImportReportDto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.*;
+
+@Component
+public class ImportUtil {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final int CSV_COLUMNS = ExportUtil.CSV_HEADER.split(",").length;
+    private static final String INVALID_ROW = "Row could not be read";
+    private static final String INVALID_DESCRIPTION = "Invalid description";
+    private static final String INVALID_BRAND = "Invalid brand";
+    private static final String INVALID_SUB_CATEGORY = "Invalid SubCategory";
+    private static final String INVALID_ATTRIBUTE = "Attribute doesn't belong to the sub category";
+    private static final String DUPLICATE_ATTRIBUTE = "Attribute is given more than once";
+    private static final String INVALID_VALUE = "Value may contain only numbers, letters and spaces between them";
+    private static final String NOT_SAVED = "Chunk could not be saved";
+
+    @Autowired
+    private ProductDao productDao;
+    @Autowired
+    private CategoryDao categoryDao;
+    @Autowired
+    private AttributeDao attributeDao;
+    @Autowired
+    private ValidationUtil validationUtil;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // takes what ExportUtil writes, in either format. csv columns are ExportUtil.CSV_HEADER, attributes is
+    // "id=value;id=value". id and offer_id are left out, every row becomes a new product outside any offer
+    public ImportReportDto importProducts(String format, InputStream inputStream) throws IOException {
+        long start = System.nanoTime();
+        Set<Long> brands = categoryDao.getAllBrandIds();
+        Set<Long> subCategories = categoryDao.getAllSubCategoryIds();
+        ImportReportDto report = new ImportReportDto();
+        List<ImportProductDto> chunk = new ArrayList<>();
+        List<Long> chunkRows = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        if (format.equals(ExportUtil.CSV)) {
+            reader.readLine();
+        }
+        long row = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            row++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            ImportProductDto product;
+            try {
+                product = format.equals(ExportUtil.CSV) ? parseCsv(line) : objectMapper.readValue(line, ImportProductDto.class);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                report.addError(row, INVALID_ROW);
+                continue;
+            }
+            String msg = checkProduct(product, brands, subCategories);
+            if (msg != null) {
+                report.addError(row, msg);
+                continue;
+            }
+            chunk.add(product);
+            chunkRows.add(row);
+            if (chunk.size() == CHUNK_SIZE) {
+                saveChunk(chunk, chunkRows, report);
+            }
+        }
+        saveChunk(chunk, chunkRows, report);
+        long nanos = System.nanoTime() - start;
+        report.setMillis(nanos / 1_000_000);
+        report.setProductsPerSecond(nanos == 0 ? 0 : report.getImported() * 1_000_000_000.0 / nanos);
+        return report;
+    }
+
+    private void saveChunk(List<ImportProductDto> chunk, List<Long> chunkRows, ImportReportDto report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            productDao.addProducts(chunk);
+            report.setImported(report.getImported() + chunk.size());
+        } catch (SQLException e) {
+            for (long row : chunkRows) {
+                report.addError(row, NOT_SAVED);
+            }
+        }
+        chunk.clear();
+        chunkRows.clear();
+    }
+
+    private String checkProduct(ImportProductDto product, Set<Long> brands, Set<Long> subCategories) {
+        String description = product.getDescription() == null ? "" : product.getDescription().trim();
+        if (description.isEmpty() || validationUtil.invalidDescription(description)) {
+            return INVALID_DESCRIPTION;
+        }
+        product.setDescription(description);
+        if (!(product.getPrice() > 0) || Double.isInfinite(product.getPrice())) {
+            return AdminController.INVALID_PRICE;
+        }
+        if (!brands.contains(product.getBrandId())) {
+            return INVALID_BRAND;
+        }
+        if (!subCategories.contains(product.getSubCategoryId())) {
+            return INVALID_SUB_CATEGORY;
+        }
+        if (product.getAttributes() == null) {
+            product.setAttributes(new ArrayList<>());
+        }
+        Map<Long, AttributeWithoutValueDto> definitions = attributeDao.getAttributesOfSubCategory(product.getSubCategoryId());
+        Set<Long> seen = new HashSet<>();
+        for (AttributeValueDto attribute : product.getAttributes()) {
+            if (!definitions.containsKey(attribute.getId())) {
+                return INVALID_ATTRIBUTE;
+            }
+            if (!seen.add(attribute.getId())) {
+                return DUPLICATE_ATTRIBUTE;
+            }
+            if (attribute.getValue() == null || validationUtil.invalidDescription(attribute.getValue())) {
+                return INVALID_VALUE;
+            }
+        }
+        return null;
+    }
+
+    private ImportProductDto parseCsv(String line) {
+        List<String> columns = splitCsv(line);
+        if (columns.size() != CSV_COLUMNS) {
+            throw new IllegalArgumentException(INVALID_ROW);
+        }
+        ImportProductDto product = new ImportProductDto();
+        product.setDescription(columns.get(1));
+        product.setPrice(Double.parseDouble(columns.get(2).trim()));
+        product.setBrandId(Long.parseLong(columns.get(3).trim()));
+        product.setSubCategoryId(Long.parseLong(columns.get(4).trim()));
+        if (!columns.get(6).trim().isEmpty()) {
+            product.setAttributes(parseAttributes(columns.get(6)));
+        }
+        return product;
+    }
+
+    // "id=value;id=value", a backslash takes the next character as it is, see ExportUtil.escapeAttributeValue
+    private List<AttributeValueDto> parseAttributes(String column) {
+        List<AttributeValueDto> attributes = new ArrayList<>();
+        StringBuilder id = new StringBuilder();
+        StringBuilder value = null;
+        for (int i = 0; i < column.length(); i++) {
+            char c = column.charAt(i);
+            StringBuilder current = value == null ? id : value;
+            if (c == '\\') {
+                if (++i == column.length()) {
+                    throw new IllegalArgumentException(INVALID_ROW);
+                }
+                current.append(column.charAt(i));
+            } else if (c == '=' && value == null) {
+                value = new StringBuilder();
+            } else if (c == ';') {
+                attributes.add(toAttribute(id, value));
+                id.setLength(0);
+                value = null;
+            } else {
+                current.append(c);
+            }
+        }
+        attributes.add(toAttribute(id, value));
+        return attributes;
+    }
+
+    private AttributeValueDto toAttribute(StringBuilder id, StringBuilder value) {
+        if (value == null) {
+            throw new IllegalArgumentException(INVALID_ROW);
+        }
+        return new AttributeValueDto(Long.parseLong(id.toString().trim()), value.toString().trim());
+    }
+
+    private List<String> splitCsv(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+}
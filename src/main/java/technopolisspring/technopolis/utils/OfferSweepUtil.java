@@ -0,0 +1,73 @@
+package technopolisspring.technopolis.utils;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
+import technopolisspring.technopolis.model.daos.OfferDao;
+import technopolisspring.technopolis.model.dto.OfferSweepStatsDto;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// clears offer_id of the products whose offer is over. every batch is its own short update,
+// with a pause after it so checkout never waits long on the rows being swept
+@Component
+public class OfferSweepUtil {
+
+    @Autowired
+    private OfferDao offerDao;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    @Value("${technopolis.offer-sweeper.batch-size:500}")
+    private int batchSize;
+    @Value("${technopolis.offer-sweeper.pause-ms:200}")
+    private long pauseMillis;
+    private long runs;
+    private long rowsProcessed;
+    private int lastRunRows;
+    private long lastRunMillis;
+    private int expiredOffersFound;
+    private long lagSeconds;
+
+    @Scheduled(fixedDelayString = "${technopolis.offer-sweeper.interval-ms:60000}",
+            initialDelayString = "${technopolis.offer-sweeper.interval-ms:60000}")
+    public void sweep() throws SQLException, InterruptedException {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, LocalDateTime> expired = offerDao.getExpiredOffersInUse();
+        long lag = 0;
+        for (LocalDateTime end : expired.values()) {
+            lag = Math.max(lag, Duration.between(end, now).getSeconds());
+        }
+        int rows = 0;
+        for (long offerId : expired.keySet()) {
+            List<Long> productIds = offerDao.getProductIdsInOffer(offerId, batchSize);
+            while (!productIds.isEmpty()) {
+                rows += offerDao.detachProducts(offerId, productIds);
+                Thread.sleep(pauseMillis);
+                productIds = offerDao.getProductIdsInOffer(offerId, batchSize);
+            }
+        }
+        if (rows > 0) {
+            catalogVersions.bump(CatalogVersions.Area.PRODUCTS);
+        }
+        synchronized (this) {
+            runs++;
+            rowsProcessed += rows;
+            lastRunRows = rows;
+            lastRunMillis = System.currentTimeMillis() - start;
+            expiredOffersFound = expired.size();
+            lagSeconds = lag;
+        }
+    }
+
+    public synchronized OfferSweepStatsDto getStats() {
+        return new OfferSweepStatsDto(runs, rowsProcessed, lastRunRows, lastRunMillis, expiredOffersFound, lagSeconds);
+    }
+
+}
@@ -0,0 +1,407 @@
+package technopolisspring.technopolis.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.exception.ServiceUnavailableException;
+import technopolisspring.technopolis.model.daos.OrderDao;
+import technopolisspring.technopolis.model.dto.OrderJournalEntryDto;
+import technopolisspring.technopolis.model.dto.OrderStatusDto;
+import technopolisspring.technopolis.model.dto.QueuedOrderDto;
+import technopolisspring.technopolis.model.pojos.Order;
+import technopolisspring.technopolis.model.pojos.OrderStatus;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+// orders taken without waiting for the database. an accepted order gets a ticket from a block reserved ahead
+// of time, is appended to a local journal and queued. a pool of workers writes the queue in batches with one
+// transaction per batch, where each order gets its generated id, and closes the tickets in the journal.
+// tickets left open in the journal by a crash or shutdown are queued again on startup
+@Slf4j
+@Component
+public class OrderIntakeUtil {
+
+    private static final String QUEUE_FULL = "Too many orders are waiting, try again shortly";
+    private static final String INTEGRITY_VIOLATION = "23";
+    private static final long RETRY_PAUSE_MILLIS = 1000;
+    private static final long STOP_WAIT_SECONDS = 10;
+    private static final long POLL_MILLIS = 500;
+
+    @Autowired
+    private OrderDao orderDao;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${technopolis.order-intake.capacity:10000}")
+    private int capacity;
+    @Value("${technopolis.order-intake.workers:2}")
+    private int workers;
+    @Value("${technopolis.order-intake.batch-size:100}")
+    private int batchSize;
+    @Value("${technopolis.order-intake.ticket-block:1000}")
+    private int ticketBlock;
+    @Value("${technopolis.order-intake.journal:order-intake.journal}")
+    private String journalPath;
+    @Value("${technopolis.order-intake.failed-retention-minutes:1440}")
+    private long failedRetentionMinutes;
+    private Semaphore slots;
+    private final BlockingQueue<QueuedOrderDto> queue = new LinkedBlockingQueue<>();
+    private final Map<Long, QueuedOrderDto> queued = new ConcurrentHashMap<>(); // <ticket, order>
+    private final Map<Long, OrderJournalEntryDto> failed = new ConcurrentHashMap<>(); // <ticket, entry>
+    private final Set<Long> retried = ConcurrentHashMap.newKeySet();
+    private volatile FileChannel journal;
+    private ExecutorService executor;
+    private volatile boolean stopping;
+    // entries handed to the journal, and how many of them a flush is known to cover
+    private long written;
+    private volatile long flushed;
+    private final Object flushLock = new Object();
+    // [nextTicket, ticketsEnd) is the block being handed out, the next one is fetched while half of it is left
+    private final Object ticketLock = new Object();
+    private long nextTicket;
+    private long ticketsEnd;
+    private CompletableFuture<Long> nextBlock;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void start() throws IOException {
+        if (executor != null) {
+            return;
+        }
+        orderDao.createTicketTables();
+        Collection<QueuedOrderDto> open = readJournal(Paths.get(journalPath));
+        List<Long> tickets = new ArrayList<>();
+        for (QueuedOrderDto order : open) {
+            tickets.add(order.getTicket());
+        }
+        // written before the crash, but not closed in the journal
+        Map<Long, Long> writtenOrders = orderDao.getOrderIdsByTickets(tickets);
+        List<QueuedOrderDto> pending = new ArrayList<>();
+        for (QueuedOrderDto order : open) {
+            if (!writtenOrders.containsKey(order.getTicket())) {
+                pending.add(order);
+            }
+        }
+        rewriteJournal(pending);
+        // the replayed orders hold their slots from the start, so replaying more than the capacity
+        // leaves the semaphore negative until the workers catch up instead of waiting on them under this lock
+        slots = new Semaphore(capacity - pending.size());
+        synchronized (ticketLock) {
+            nextTicket = orderDao.reserveTickets(ticketBlock);
+            ticketsEnd = nextTicket + ticketBlock;
+        }
+        executor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+        for (QueuedOrderDto order : pending) {
+            queued.put(order.getTicket(), order);
+            queue.add(order);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        ExecutorService workers;
+        synchronized (this) {
+            workers = executor;
+        }
+        if (workers != null) {
+            // the workers finish their batch and leave. they are not interrupted, since an interrupt during
+            // a write closes the journal channel, and the batch would stay open for the replay.
+            // not waited for under the lock, which the closing worker needs
+            stopping = true;
+            workers.shutdown();
+            if (!workers.awaitTermination(STOP_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+            synchronized (this) {
+                journal.close();
+            }
+        }
+    }
+
+    // returns the ticket of the order, the order itself is written to the database later
+    public long submit(Order order) throws IOException {
+        if (!slots.tryAcquire()) {
+            throw new ServiceUnavailableException(QUEUE_FULL);
+        }
+        QueuedOrderDto queuedOrder = orderDao.toQueuedOrder(order);
+        long entryNumber;
+        try {
+            queuedOrder.setTicket(takeTicket());
+            ByteBuffer entry = encode(new OrderJournalEntryDto(queuedOrder.getTicket(), OrderStatus.QUEUED,
+                    queuedOrder, order.getUserId(), System.currentTimeMillis()));
+            synchronized (this) {
+                journal.write(entry);
+                queued.put(queuedOrder.getTicket(), queuedOrder);
+                entryNumber = ++written;
+            }
+        } catch (IOException | RuntimeException e) {
+            queued.remove(queuedOrder.getTicket());
+            slots.release();
+            throw e;
+        }
+        queue.add(queuedOrder);
+        try {
+            flush(entryNumber);
+        } catch (IOException e) {
+            // the order is in the journal and the queue already, so it is taken all the same
+            log.warn("Could not flush the order journal after ticket {}", queuedOrder.getTicket(), e);
+        }
+        return queuedOrder.getTicket();
+    }
+
+    // null when the user has no such ticket
+    public OrderStatusDto getStatus(long ticket, long userId) {
+        QueuedOrderDto order = queued.get(ticket);
+        if (order != null) {
+            return order.getUserId() == userId ? new OrderStatusDto(ticket, null, OrderStatus.QUEUED) : null;
+        }
+        OrderJournalEntryDto failure = failed.get(ticket);
+        if (failure != null) {
+            return failure.getUserId() == userId ? new OrderStatusDto(ticket, null, OrderStatus.FAILED) : null;
+        }
+        Long orderId = orderDao.getOrderIdsByTickets(Collections.singletonList(ticket)).get(ticket);
+        if (orderId == null) {
+            return null;
+        }
+        Long owner = orderDao.getOrderOwner(orderId);
+        return owner != null && owner == userId ? new OrderStatusDto(ticket, orderId, OrderStatus.PERSISTED) : null;
+    }
+
+    public int countQueued() {
+        return queued.size();
+    }
+
+    private long takeTicket() {
+        synchronized (ticketLock) {
+            if (nextTicket == ticketsEnd) {
+                CompletableFuture<Long> block = nextBlock;
+                nextBlock = null;
+                nextTicket = block == null ? orderDao.reserveTickets(ticketBlock) : block.join();
+                ticketsEnd = nextTicket + ticketBlock;
+            }
+            if (nextBlock == null && ticketsEnd - nextTicket <= ticketBlock / 2) {
+                nextBlock = CompletableFuture.supplyAsync(() -> orderDao.reserveTickets(ticketBlock));
+            }
+            return nextTicket++;
+        }
+    }
+
+    // one force covers every entry written before it started, so the checkouts waiting meanwhile share it
+    private void flush(long entryNumber) throws IOException {
+        if (flushed >= entryNumber) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (flushed >= entryNumber) {
+                return;
+            }
+            long covered;
+            synchronized (this) {
+                covered = written;
+            }
+            journal.force(false);
+            flushed = covered;
+        }
+    }
+
+    private void work() {
+        List<QueuedOrderDto> batch = new ArrayList<>();
+        while (!stopping) {
+            try {
+                QueuedOrderDto first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                try {
+                    persist(batch);
+                } catch (RuntimeException e) {
+                    // the worker keeps going, the batch is tried again
+                    log.error("Could not write a batch of {} orders", batch.size(), e);
+                    retryLater(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    private void persist(List<QueuedOrderDto> batch) throws InterruptedException {
+        List<OrderJournalEntryDto> closed = new ArrayList<>();
+        List<QueuedOrderDto> unwritten = new ArrayList<>(batch);
+        List<Long> retriedTickets = new ArrayList<>();
+        for (QueuedOrderDto order : batch) {
+            if (retried.remove(order.getTicket())) {
+                retriedTickets.add(order.getTicket());
+            }
+        }
+        if (!retriedTickets.isEmpty()) {
+            // a try that failed after its commit already wrote these
+            Map<Long, Long> writtenOrders = orderDao.getOrderIdsByTickets(retriedTickets);
+            unwritten.removeIf(order -> writtenOrders.containsKey(order.getTicket()));
+            for (QueuedOrderDto order : batch) {
+                if (writtenOrders.containsKey(order.getTicket())) {
+                    closed.add(closingEntry(order, OrderStatus.PERSISTED));
+                }
+            }
+        }
+        List<QueuedOrderDto> retries = new ArrayList<>();
+        try {
+            orderDao.addQueuedOrders(unwritten);
+            for (QueuedOrderDto order : unwritten) {
+                closed.add(closingEntry(order, OrderStatus.PERSISTED));
+            }
+        } catch (SQLException e) {
+            if (!isIntegrityViolation(e)) {
+                log.warn("Could not write a batch of {} orders, retrying", unwritten.size(), e);
+                retries.addAll(unwritten);
+            } else {
+                // one bad order, like one with a product deleted meanwhile, must not sink the rest of the batch
+                for (QueuedOrderDto order : unwritten) {
+                    try {
+                        orderDao.addQueuedOrders(Collections.singletonList(order));
+                        closed.add(closingEntry(order, OrderStatus.PERSISTED));
+                    } catch (SQLException orderException) {
+                        if (isIntegrityViolation(orderException)) {
+                            closed.add(closingEntry(order, OrderStatus.FAILED));
+                        } else {
+                            retries.add(order);
+                        }
+                    }
+                }
+            }
+        }
+        close(closed);
+        if (!retries.isEmpty()) {
+            retryLater(retries);
+        }
+    }
+
+    // the database is down or busy, the orders keep their slots and wait for the next try
+    private void retryLater(List<QueuedOrderDto> orders) throws InterruptedException {
+        for (QueuedOrderDto order : orders) {
+            retried.add(order.getTicket());
+        }
+        Thread.sleep(RETRY_PAUSE_MILLIS);
+        queue.addAll(orders);
+    }
+
+    private void close(List<OrderJournalEntryDto> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                for (OrderJournalEntryDto entry : entries) {
+                    journal.write(encode(entry));
+                    if (entry.getStatus() == OrderStatus.FAILED) {
+                        failed.put(entry.getTicket(), entry);
+                    }
+                    queued.remove(entry.getTicket());
+                }
+                // nothing is open, so the journal can start over with just the recent failures
+                if (queued.isEmpty()) {
+                    if (failed.isEmpty()) {
+                        journal.truncate(0);
+                    } else {
+                        rewriteJournal(Collections.emptyList());
+                    }
+                }
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            // the written orders have their tickets in the database, startup tells them apart
+            log.warn("Could not close {} tickets in the journal", entries.size(), e);
+            for (OrderJournalEntryDto entry : entries) {
+                queued.remove(entry.getTicket());
+            }
+        }
+        slots.release(entries.size());
+    }
+
+    // the open orders and the failures still kept go to a fresh journal, which replaces the old one in one move
+    private synchronized void rewriteJournal(Collection<QueuedOrderDto> open) throws IOException {
+        long keptSince = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(failedRetentionMinutes);
+        failed.values().removeIf(entry -> entry.getTime() < keptSince);
+        Path path = Paths.get(journalPath);
+        Path compacted = Paths.get(journalPath + ".tmp");
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (QueuedOrderDto order : open) {
+                channel.write(encode(new OrderJournalEntryDto(order.getTicket(), OrderStatus.QUEUED, order,
+                        order.getUserId(), System.currentTimeMillis())));
+            }
+            for (OrderJournalEntryDto entry : failed.values()) {
+                channel.write(encode(entry));
+            }
+            channel.force(true);
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (journal != null) {
+            journal.close();
+        }
+        journal = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private OrderJournalEntryDto closingEntry(QueuedOrderDto order, OrderStatus status) {
+        return new OrderJournalEntryDto(order.getTicket(), status, null, order.getUserId(), System.currentTimeMillis());
+    }
+
+    private boolean isIntegrityViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_VIOLATION);
+    }
+
+    private ByteBuffer encode(OrderJournalEntryDto entry) throws JsonProcessingException {
+        return ByteBuffer.wrap((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // the orders still open, a line cut short by a crash is skipped. the failures are put back in the map
+    private Collection<QueuedOrderDto> readJournal(Path path) throws IOException {
+        Map<Long, QueuedOrderDto> open = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return open.values();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                OrderJournalEntryDto entry;
+                try {
+                    entry = objectMapper.readValue(line, OrderJournalEntryDto.class);
+                } catch (JsonProcessingException e) {
+                    continue;
+                }
+                if (entry.getStatus() == OrderStatus.QUEUED) {
+                    open.put(entry.getTicket(), entry.getOrder());
+                } else {
+                    open.remove(entry.getTicket());
+                    if (entry.getStatus() == OrderStatus.FAILED) {
+                        failed.put(entry.getTicket(), entry);
+                    }
+                }
+            }
+        }
+        return open.values();
+    }
+
+}
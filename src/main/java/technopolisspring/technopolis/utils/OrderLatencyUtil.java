@@ -0,0 +1,41 @@
+package technopolisspring.technopolis.utils;
+
+import org.springframework.stereotype.Component;
+import technopolisspring.technopolis.model.dto.OrderLatencyDto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// how long placing an order takes on each checkout endpoint, so the synchronous and the queued
+// checkout can be compared on the same traffic
+@Component
+public class OrderLatencyUtil {
+
+    public static final String SYNC = "POST /orders";
+    public static final String ASYNC = "POST /orders/async";
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    public OrderLatencyUtil() {
+        histograms.put(SYNC, new LatencyHistogram());
+        histograms.put(ASYNC, new LatencyHistogram());
+    }
+
+    public void record(String endpoint, long startNanos) {
+        histograms.get(endpoint).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public List<OrderLatencyDto> getStats() {
+        List<OrderLatencyDto> stats = new ArrayList<>();
+        histograms.forEach((endpoint, histogram) -> stats.add(new OrderLatencyDto(endpoint, histogram.count(),
+                histogram.percentile(50) / MICROS_PER_MILLI,
+                histogram.percentile(99) / MICROS_PER_MILLI,
+                histogram.max() / MICROS_PER_MILLI)));
+        return stats;
+    }
+
+}
@@ -0,0 +1,121 @@
+package technopolisspring.technopolis.model.daos;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import technopolisspring.technopolis.model.dto.QueuedOrderDto;
+import technopolisspring.technopolis.model.index.CatalogIndex;
+import technopolisspring.technopolis.model.index.CoPurchases;
+import technopolisspring.technopolis.model.index.ListingCounts;
+import technopolisspring.technopolis.model.index.TrendingProducts;
+import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.Order;
+import technopolisspring.technopolis.model.pojos.Product;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OrderDaoTests {
+
+    private final Connection connection = mock(Connection.class);
+    private final PreparedStatement orderStatement = mock(PreparedStatement.class);
+    private final PreparedStatement linesStatement = mock(PreparedStatement.class);
+    private final PreparedStatement ticketsStatement = mock(PreparedStatement.class);
+    private final ResultSet keys = mock(ResultSet.class);
+    private OrderDao orderDao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        orderDao = new OrderDao();
+        orderDao.jdbcTemplate = mock(JdbcTemplate.class);
+        orderDao.listingCounts = mock(ListingCounts.class);
+        orderDao.catalogIndex = mock(CatalogIndex.class);
+        orderDao.trendingProducts = mock(TrendingProducts.class);
+        orderDao.coPurchases = mock(CoPurchases.class);
+        DataSource dataSource = mock(DataSource.class);
+        when(orderDao.jdbcTemplate.getDataSource()).thenReturn(dataSource);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(contains("`orders`"), anyInt())).thenReturn(orderStatement);
+        when(connection.prepareStatement(contains("`orders_have_products`"))).thenReturn(linesStatement);
+        when(connection.prepareStatement(contains("`order_tickets`"))).thenReturn(ticketsStatement);
+        when(orderStatement.getGeneratedKeys()).thenReturn(keys);
+    }
+
+    @Test
+    void writesTheLinesOfAnOrderInOneBatch() throws Exception {
+        when(keys.next()).thenReturn(true);
+        when(keys.getLong(1)).thenReturn(500L);
+        Order order = new Order(3, "Sofia", basket(10, 20, 30));
+
+        orderDao.addOrder(order);
+        assertEquals(500, order.getId());
+        verify(orderStatement, times(1)).executeUpdate();
+        verify(linesStatement, times(3)).addBatch();
+        verify(linesStatement, times(1)).executeBatch();
+        verify(linesStatement, never()).executeUpdate();
+        verify(connection).commit();
+        verify(orderDao.listingCounts).orderAdded(3);
+        verify(orderDao.catalogIndex).addSales(20, 1);
+        verify(orderDao.coPurchases).ordered(500, new HashSet<>(Arrays.asList(10L, 20L, 30L)));
+    }
+
+    @Test
+    void rollsBackWhenALineFails() throws Exception {
+        when(keys.next()).thenReturn(true);
+        when(keys.getLong(1)).thenReturn(500L);
+        when(linesStatement.executeBatch()).thenThrow(new SQLException("Cannot add or update a child row", "23000"));
+
+        assertThrows(SQLException.class, () -> orderDao.addOrder(new Order(3, "Sofia", basket(10, 20))));
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(connection).close();
+        verifyNoInteractions(orderDao.listingCounts, orderDao.coPurchases);
+    }
+
+    @Test
+    void writesQueuedOrdersWithTheirTicketsInOneTransaction() throws Exception {
+        when(keys.next()).thenReturn(true, true, false);
+        when(keys.getLong(1)).thenReturn(500L, 501L);
+        QueuedOrderDto first = queued(7, 10, 20);
+        QueuedOrderDto second = queued(8, 30);
+
+        orderDao.addQueuedOrders(Arrays.asList(first, second));
+        assertEquals(500, first.getId());
+        assertEquals(501, second.getId());
+        verify(orderStatement, times(2)).addBatch();
+        verify(orderStatement, times(1)).executeBatch();
+        verify(linesStatement, times(3)).addBatch();
+        verify(linesStatement, times(1)).executeBatch();
+        verify(ticketsStatement).setLong(1, 8);
+        verify(ticketsStatement).setLong(2, 501);
+        verify(ticketsStatement, times(1)).executeBatch();
+        verify(connection, times(1)).commit();
+        verify(orderDao.listingCounts, times(2)).orderAdded(3);
+    }
+
+    private static Map<IProduct, Integer> basket(long... productIds) {
+        Map<IProduct, Integer> basket = new HashMap<>();
+        for (long productId : productIds) {
+            basket.put(new Product(productId, "product " + productId, 10, 1, 1, 0), 1);
+        }
+        return basket;
+    }
+
+    private static QueuedOrderDto queued(long ticket, long... productIds) {
+        Map<Long, Integer> lines = new HashMap<>();
+        for (long productId : productIds) {
+            lines.put(productId, 1);
+        }
+        return new QueuedOrderDto(ticket, 0, 3, "Sofia", 10, lines);
+    }
+
+}
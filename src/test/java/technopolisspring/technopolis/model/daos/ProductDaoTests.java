@@ -0,0 +1,88 @@
+package technopolisspring.technopolis.model.daos;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import technopolisspring.technopolis.model.cache.ProductCache;
+import technopolisspring.technopolis.model.index.OfferPricing;
+import technopolisspring.technopolis.model.pojos.Attribute;
+import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.IProductWithAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProductDaoTests {
+
+    private final Connection connection = mock(Connection.class);
+    private final PreparedStatement statement = mock(PreparedStatement.class);
+    private final ResultSet result = mock(ResultSet.class);
+    private ProductDao productDao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        productDao = new ProductDao();
+        productDao.jdbcTemplate = mock(JdbcTemplate.class);
+        productDao.attributeDao = mock(AttributeDao.class);
+        productDao.offerPricing = mock(OfferPricing.class);
+        productDao.productCache = new ProductCache(10);
+        // not in a running offer
+        when(productDao.offerPricing.getDiscount(anyLong())).thenReturn(null);
+        DataSource dataSource = mock(DataSource.class);
+        when(productDao.jdbcTemplate.getDataSource()).thenReturn(dataSource);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(result);
+        when(result.getInt("p.id")).thenReturn(42);
+        when(result.getString("description")).thenReturn("Lenovo laptop");
+        when(result.getDouble("price")).thenReturn(999.0);
+        when(result.getLong("brand_id")).thenReturn(3L);
+        when(result.getInt("sub_category_id")).thenReturn(7);
+    }
+
+    @Test
+    void loadsTheProductRowAndItsAttributesSeparately() throws Exception {
+        when(result.next()).thenReturn(true, false);
+        List<Attribute> attributes = Arrays.asList(new Attribute(1, "RAM", 7, "16 GB"),
+                new Attribute(2, "CPU", 7, "i7"));
+        when(productDao.attributeDao.getAttributesOfProduct(42, 7)).thenReturn(attributes);
+
+        IProductWithAttributes product = (IProductWithAttributes) productDao.getProductById(42);
+        assertEquals(42, product.getId());
+        assertEquals("Lenovo laptop", product.getDescription());
+        assertEquals(attributes, product.getAttributes());
+        // one row for the product whatever the number of attributes
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(result, times(1)).next();
+    }
+
+    @Test
+    void servesTheSecondReadFromTheCache() throws Exception {
+        when(result.next()).thenReturn(true, false);
+        IProduct first = productDao.getProductById(42);
+        IProduct second = productDao.getProductById(42);
+        assertSame(first, second);
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(productDao.attributeDao, times(1)).getAttributesOfProduct(42, 7);
+    }
+
+    @Test
+    void skipsTheAttributesOfAMissingProduct() throws Exception {
+        when(result.next()).thenReturn(false);
+        assertNull(productDao.getProductById(42));
+        verifyNoInteractions(productDao.attributeDao);
+        verify(connection).close();
+    }
+
+}
@@ -0,0 +1,99 @@
+package technopolisspring.technopolis.model.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CoPurchasesTests {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    // <order id, product id> rows in the database
+    private final List<long[]> lines = new ArrayList<>();
+    private CoPurchases coPurchases;
+
+    @BeforeEach
+    void setUp() {
+        coPurchases = new CoPurchases();
+        ReflectionTestUtils.setField(coPurchases, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(coPurchases, "bootstrapThreads", 2);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenAnswer(invocation ->
+                lines.stream().mapToLong(line -> line[0]).max().orElse(0));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            long from = invocation.getArgument(2);
+            long to = invocation.getArgument(3);
+            for (long[] line : lines) {
+                if (line[0] > from && line[0] <= to) {
+                    ResultSet row = mock(ResultSet.class);
+                    when(row.getLong("order_id")).thenReturn(line[0]);
+                    when(row.getLong("product_id")).thenReturn(line[1]);
+                    handler.processRow(row);
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), anyLong(), anyLong());
+    }
+
+    @Test
+    void countsOrdersFromTheScanAndAsTheyCommit() throws Exception {
+        order(1, 10, 20);
+        order(2, 10, 20, 30);
+        order(3, 10, 30);
+        coPurchases.load();
+        assertEquals(Arrays.asList(20L, 30L), coPurchases.getAlsoBought(10, 5));
+        assertEquals(Arrays.asList(10L, 30L), coPurchases.getAlsoBought(20, 5));
+
+        coPurchases.ordered(4, Arrays.asList(30L, 40L));
+        coPurchases.ordered(5, Arrays.asList(30L, 40L, 40L));
+        // 40 with 30 twice now, like 10
+        assertEquals(Arrays.asList(10L, 40L, 20L), coPurchases.getAlsoBought(30, 5));
+        assertEquals(Arrays.asList(10L), coPurchases.getAlsoBought(30, 1));
+        assertTrue(coPurchases.getAlsoBought(99, 5).isEmpty());
+    }
+
+    @Test
+    void countsAnOrderOnceWhenBothTheScanAndTheCommitSeeIt() throws Exception {
+        order(1, 10, 20);
+        // a journal replay reports an order before the scan reads it
+        coPurchases.ordered(1, Arrays.asList(10L, 20L));
+        coPurchases.load();
+        coPurchases.ordered(1, Arrays.asList(10L, 20L));
+        order(2, 10, 30);
+        order(3, 10, 30);
+        coPurchases.ordered(2, Arrays.asList(10L, 30L));
+        coPurchases.ordered(3, Arrays.asList(10L, 30L));
+        // 30 twice, 20 once
+        assertEquals(Arrays.asList(30L, 20L), coPurchases.getAlsoBought(10, 5));
+    }
+
+    @Test
+    void countsAnOrderCommittedLateWithALowerId() throws Exception {
+        order(1, 10, 20);
+        order(3, 10, 20);
+        coPurchases.load();
+        // order 2 took its id before the scan but committed after it
+        coPurchases.ordered(2, Arrays.asList(10L, 30L));
+        coPurchases.ordered(6, Arrays.asList(10L, 30L));
+        coPurchases.ordered(7, Arrays.asList(10L, 30L));
+        assertEquals(Arrays.asList(30L, 20L), coPurchases.getAlsoBought(10, 5));
+    }
+
+    private void order(long orderId, long... productIds) {
+        for (long productId : productIds) {
+            lines.add(new long[]{orderId, productId});
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package technopolisspring.technopolis.model.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DescriptionIndexTests {
+
+    private DescriptionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new DescriptionIndex();
+        ReflectionTestUtils.setField(index, "correctionBudgetMillis", 1000L);
+        index.add(1, "Samsung Galaxy phone with a large screen");
+        index.add(2, "Apple iPhone phone, phone of the year");
+        index.add(3, "Samsung television");
+        index.add(4, "Lenovo laptop with a large battery");
+    }
+
+    @Test
+    void tokenizesOnAnythingButLettersAndDigits() {
+        assertEquals(Arrays.asList("wi", "fi", "router", "5g"), DescriptionIndex.tokenize("Wi-Fi  router, 5G!"));
+        assertTrue(DescriptionIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void needsEveryTermOfTheQuery() {
+        assertEquals(Arrays.asList(1L), ids(index.search("samsung phone")));
+        assertEquals(Arrays.asList(1L, 4L), ids(index.search("large")).stream().sorted().collect(Collectors.toList()));
+        assertTrue(index.search("samsung laptop").isEmpty());
+        assertTrue(index.search("").isEmpty());
+    }
+
+    @Test
+    void ranksTheMoreFrequentTermHigher() {
+        // product 2 has "phone" twice in a shorter description
+        assertEquals(Arrays.asList(2L, 1L), ids(index.search("phone")));
+    }
+
+    @Test
+    void ranksTheShorterDescriptionHigher() {
+        index.add(5, "phone case for a samsung phone");
+        List<SearchHit> hits = index.search("samsung");
+        // one match each, and product 3 has the fewest other words
+        assertEquals(3L, hits.get(0).getProductId());
+        assertTrue(hits.get(0).getScore() > hits.get(hits.size() - 1).getScore());
+    }
+
+    @Test
+    void forgetsRemovedAndReplacedDescriptions() {
+        index.remove(3);
+        assertEquals(Arrays.asList(1L), ids(index.search("samsung")));
+        index.add(4, "Samsung laptop");
+        assertEquals(Arrays.asList(4L), ids(index.search("samsung laptop")));
+        assertTrue(index.search("battery").isEmpty());
+    }
+
+    @Test
+    void ranksLaterPagesWithTheSnapshotOfTheFirst() {
+        RankedHits first = index.searchTolerant("samsung", null);
+        SearchSnapshot snapshot = SearchSnapshot.decode(first.getSnapshot().encode());
+        index.add(5, "samsung samsung samsung");
+        index.add(6, "samsung fridge");
+        RankedHits later = index.searchTolerant("samsung", snapshot);
+        for (SearchHit hit : first.getHits()) {
+            SearchHit again = later.getHits().stream()
+                    .filter(other -> other.getProductId() == hit.getProductId()).findFirst().get();
+            assertEquals(hit.getScore(), again.getScore(), 1e-9);
+        }
+    }
+
+    @Test
+    void correctsAMisspelledWord() {
+        ReflectionTestUtils.invokeMethod(index, "rebuildDictionary");
+        assertEquals(Arrays.asList(4L), ids(index.searchTolerant("lenvoo")));
+        assertEquals(Arrays.asList(3L), ids(index.searchTolerant("televison")));
+        assertTrue(index.searchTolerant("zzzzzz").isEmpty());
+    }
+
+    @Test
+    void suggestsCompletionsOfTheLastWord() {
+        ReflectionTestUtils.invokeMethod(index, "rebuildDictionary");
+        assertEquals(Arrays.asList("samsung phone"), index.suggest("samsung ph", 5));
+        assertEquals(Arrays.asList("large", "laptop"), index.suggest("la", 5));
+        assertTrue(index.suggest("samsung ", 5).isEmpty());
+    }
+
+    private static List<Long> ids(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getProductId).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,122 @@
+package technopolisspring.technopolis.model.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import technopolisspring.technopolis.model.cache.CatalogVersions;
+import technopolisspring.technopolis.model.cache.ProductCache;
+import technopolisspring.technopolis.model.daos.ProductDao;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class OfferPricingTests {
+
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private final ProductDao productDao = mock(ProductDao.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final CatalogVersions catalogVersions = new CatalogVersions();
+    private OfferPricing offerPricing;
+
+    @BeforeEach
+    void setUp() {
+        offerPricing = new OfferPricing();
+        ReflectionTestUtils.setField(offerPricing, "taskScheduler", taskScheduler);
+        ReflectionTestUtils.setField(offerPricing, "productDao", productDao);
+        ReflectionTestUtils.setField(offerPricing, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(offerPricing, "productCache", new ProductCache(10));
+        ReflectionTestUtils.setField(offerPricing, "catalogVersions", catalogVersions);
+    }
+
+    @Test
+    void activatesAtTheStartAndExpiresAtTheEnd() {
+        LocalDateTime start = LocalDateTime.now().plusHours(1);
+        LocalDateTime end = start.plusDays(1);
+        offerPricing.offerAdded(7, 20, start, end);
+        List<Runnable> tasks = scheduled(Timestamp.valueOf(start), Timestamp.valueOf(end));
+        assertNull(offerPricing.getDiscount(7));
+        assertEquals("0", offerPricing.discountSql("offer_id"));
+
+        String etag = catalogVersions.etag(CatalogVersions.Area.PRODUCTS);
+        tasks.get(0).run();
+        assertEquals(20.0, offerPricing.getDiscount(7));
+        assertEquals("CASE offer_id WHEN 7 THEN 20.0 ELSE 0 END", offerPricing.discountSql("offer_id"));
+        verify(productDao).reindexOffer(7);
+        assertNotEquals(etag, catalogVersions.etag(CatalogVersions.Area.PRODUCTS));
+
+        tasks.get(1).run();
+        assertNull(offerPricing.getDiscount(7));
+        verify(productDao, times(2)).reindexOffer(7);
+    }
+
+    @Test
+    void ignoresAnOfferThatIsAlreadyOver() {
+        LocalDateTime end = LocalDateTime.now().minusMinutes(1);
+        offerPricing.offerAdded(7, 20, end.minusDays(1), end);
+        verifyNoInteractions(taskScheduler);
+        assertNull(offerPricing.getDiscount(7));
+    }
+
+    @Test
+    void expiringTwiceReindexesOnce() {
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        LocalDateTime end = LocalDateTime.now().plusHours(1);
+        offerPricing.offerAdded(7, 20, start, end);
+        List<Runnable> tasks = scheduled(Timestamp.valueOf(start), Timestamp.valueOf(end));
+        tasks.get(0).run();
+        tasks.get(1).run();
+        tasks.get(1).run();
+        verify(productDao, times(2)).reindexOffer(7);
+    }
+
+    @Test
+    void loadsRunningOffersAndSchedulesTheRest() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        ResultSet rows = mock(ResultSet.class);
+        when(rows.getLong("id")).thenReturn(1L, 2L);
+        when(rows.getDouble("discount_percent")).thenReturn(10.0, 30.0);
+        when(rows.getTimestamp("start_date"))
+                .thenReturn(Timestamp.valueOf(now.minusDays(1)), Timestamp.valueOf(now.plusDays(1)));
+        when(rows.getTimestamp("end_date"))
+                .thenReturn(Timestamp.valueOf(now.plusDays(2)), Timestamp.valueOf(now.plusDays(3)));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rows);
+            handler.processRow(rows);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        offerPricing.load();
+        assertEquals(10.0, offerPricing.getDiscount(1));
+        assertNull(offerPricing.getDiscount(2));
+        // an end for each, a start only for the one still to come
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler, times(3)).schedule(tasks.capture(), any(Date.class));
+        tasks.getAllValues().get(1).run();
+        assertEquals(30.0, offerPricing.getDiscount(2));
+    }
+
+    // the tasks scheduled so far, in the order of the times given
+    private List<Runnable> scheduled(Date... times) {
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Date> at = ArgumentCaptor.forClass(Date.class);
+        verify(taskScheduler, times(times.length)).schedule(tasks.capture(), at.capture());
+        assertEquals(List.of(times), at.getAllValues());
+        return tasks.getAllValues();
+    }
+
+}
@@ -0,0 +1,115 @@
+package technopolisspring.technopolis.model.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import technopolisspring.technopolis.model.dto.ProductInOfferDto;
+import technopolisspring.technopolis.model.dto.ProductPageDto;
+import technopolisspring.technopolis.model.pojos.Cursor;
+import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.Product;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OffersViewTests {
+
+    private final OfferPricing offerPricing = mock(OfferPricing.class);
+    private OffersView offersView;
+
+    @BeforeEach
+    void setUp() {
+        when(offerPricing.getDiscount(1)).thenReturn(10.0);
+        when(offerPricing.getDiscount(2)).thenReturn(30.0);
+        when(offerPricing.getDiscount(3)).thenReturn(10.0);
+        offersView = new OffersView();
+        ReflectionTestUtils.setField(offersView, "offerPricing", offerPricing);
+        List<IProduct> products = new ArrayList<>();
+        for (long id = 1; id <= 45; id++) {
+            products.add(inOffer(id, id % 2 == 0 ? 2 : id % 3 == 0 ? 3 : 1));
+        }
+        products.add(new Product(100, "not discounted", 5, 1, 1, 0));
+        offersView.load(products);
+    }
+
+    @Test
+    void listsByDiscountThenId() {
+        List<Long> ids = ids(offersView.getProducts(0, 100));
+        List<Long> expected = new ArrayList<>();
+        // offer 2 at 30% first, then offers 1 and 3 at 10% merged by id
+        for (long id = 2; id <= 45; id += 2) {
+            expected.add(id);
+        }
+        for (long id = 1; id <= 45; id += 2) {
+            expected.add(id);
+        }
+        assertEquals(expected, ids);
+        assertEquals(45, offersView.countProducts());
+    }
+
+    @Test
+    void seeksPageByPageThroughEveryProduct() {
+        List<Long> seen = new ArrayList<>();
+        Cursor cursor = null;
+        int pages = 0;
+        do {
+            ProductPageDto page = offersView.getProducts(cursor, 20);
+            seen.addAll(ids(page.getProducts()));
+            cursor = page.getNextCursor() == null ? null : Cursor.decode(page.getNextCursor());
+            pages++;
+        } while (cursor != null);
+        assertEquals(3, pages);
+        assertEquals(ids(offersView.getProducts(0, 100)), seen);
+    }
+
+    @Test
+    void endsWithoutACursorOnAnExactlyFullPage() {
+        ProductPageDto page = offersView.getProducts(null, 45);
+        assertEquals(45, page.getProducts().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void listsOneOffer() {
+        assertEquals(22, offersView.countProductsInOffer(2));
+        assertEquals(Arrays.asList(2L, 4L, 6L), ids(offersView.getProductsInOffer(2, 0, 3)));
+        assertEquals(Arrays.asList(44L), ids(offersView.getProductsInOffer(2, 21, 3)));
+        assertEquals(0, offersView.countProductsInOffer(9));
+    }
+
+    @Test
+    void followsProductChanges() {
+        // product 2 leaves its offer, product 1 moves to offer 2, product 50 joins
+        offersView.put(new Product(2, "no longer discounted", 10, 1, 1, 0));
+        offersView.put(inOffer(1, 2));
+        offersView.put(inOffer(50, 1));
+        offersView.remove(4);
+        assertEquals(21, offersView.countProductsInOffer(2));
+        assertEquals(Arrays.asList(1L, 6L), ids(offersView.getProductsInOffer(2, 0, 2)));
+        assertEquals(44, offersView.countProducts());
+        assertEquals(50L, (long) ids(offersView.getProducts(0, 100)).get(43));
+    }
+
+    @Test
+    void dropsAnOfferThatEnded() {
+        when(offerPricing.getDiscount(2)).thenReturn(null);
+        // the view only rebuilds an offer when one of its products changes, as the reindex after expiry does
+        offersView.remove(2);
+        assertEquals(0, offersView.countProductsInOffer(2));
+        assertEquals(23, offersView.countProducts());
+    }
+
+    private static ProductInOfferDto inOffer(long id, long offerId) {
+        return new ProductInOfferDto(id, "product " + id, 100, 90, 1, 1, offerId);
+    }
+
+    private static List<Long> ids(Collection<IProduct> products) {
+        return products.stream().map(IProduct::getId).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,68 @@
+package technopolisspring.technopolis.model.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TermDictionaryTests {
+
+    // sorted, as the description index hands them over
+    private final TermDictionary dictionary = new TermDictionary(
+            new String[]{"battery", "iphone", "laptop", "large", "lenovo", "phone", "samsung", "television"},
+            new int[]{3, 5, 8, 2, 4, 9, 7, 1});
+
+    @Test
+    void correctsOneEdit() {
+        assertEquals("samsung", correct("samsnug"));
+        assertEquals("samsung", correct("samung"));
+        assertEquals("samsung", correct("samsungg"));
+        assertEquals("laptop", correct("lapton"));
+    }
+
+    @Test
+    void countsASwapOfNeighboursAsOneEdit() {
+        assertEquals("phone", correct("hpone"));
+        assertEquals("lenovo", correct("lenvoo"));
+        // two swaps are two edits, which a long word is allowed
+        assertEquals("television", correct("tleevisoin"));
+    }
+
+    @Test
+    void allowsOneEditForShortWords() {
+        assertEquals("phone", correct("phon"));
+        assertNull(correct("pho"));
+    }
+
+    @Test
+    void prefersTheMoreCommonTermOnATie() {
+        // one deletion away from both
+        TermDictionary tied = new TermDictionary(new String[]{"cart", "cast"}, new int[]{1, 5});
+        assertEquals("cast", tied.correct("carst", deadline()));
+    }
+
+    @Test
+    void givesUpOnFarWordsAndAPassedDeadline() {
+        assertNull(correct("xylophone"));
+        assertNull(dictionary.correct("samsnug", System.nanoTime() - 1));
+    }
+
+    @Test
+    void completesByPopularity() {
+        assertEquals(Arrays.asList("laptop", "large"), dictionary.complete("la", 5));
+        assertEquals(Arrays.asList("laptop"), dictionary.complete("l", 1));
+        assertEquals(Arrays.asList(), dictionary.complete("q", 5));
+    }
+
+    private String correct(String word) {
+        return dictionary.correct(word, deadline());
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,106 @@
+package technopolisspring.technopolis.model.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.Product;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TrendingProductsTests {
+
+    private static final long PHONES = 1;
+    private static final long LAPTOPS = 2;
+
+    private final Map<Long, IProduct> catalog = new HashMap<>();
+    private TrendingProducts trending;
+
+    @BeforeEach
+    void setUp() {
+        CatalogIndex catalogIndex = mock(CatalogIndex.class);
+        when(catalogIndex.get(anyLong())).thenAnswer(invocation -> catalog.get(invocation.<Long>getArgument(0)));
+        trending = new TrendingProducts(60);
+        ReflectionTestUtils.setField(trending, "catalogIndex", catalogIndex);
+        for (long id = 1; id <= 10; id++) {
+            addProduct(id, PHONES);
+        }
+        for (long id = 11; id <= 20; id++) {
+            addProduct(id, LAPTOPS);
+        }
+    }
+
+    @Test
+    void ranksByWeightedActivity() {
+        trending.viewed(1);
+        trending.viewed(1);
+        trending.addedToBasket(2);
+        trending.ordered(3, 1);
+        trending.viewed(11);
+        trending.drain();
+        // an order weighs 5, a basket add 3 and a view 1
+        assertEquals(Arrays.asList(3L, 2L, 1L, 11L), trending.getTrending(null, 10));
+        assertEquals(Arrays.asList(3L, 2L), trending.getTrending(null, 2));
+    }
+
+    @Test
+    void ranksEachSubCategoryOnItsOwn() {
+        trending.ordered(11, 2);
+        trending.viewed(1);
+        trending.drain();
+        assertEquals(Arrays.asList(1L), trending.getTrending(PHONES, 10));
+        assertEquals(Arrays.asList(11L), trending.getTrending(LAPTOPS, 10));
+        assertTrue(trending.getTrending(99L, 10).isEmpty());
+    }
+
+    @Test
+    void skipsProductsNotInTheCatalog() {
+        trending.ordered(1000, 5);
+        trending.viewed(4);
+        trending.drain();
+        assertEquals(Arrays.asList(4L), trending.getTrending(null, 10));
+    }
+
+    @Test
+    void keepsAFrequentProductWhenTheSummaryOverflows() {
+        for (int i = 0; i < 50; i++) {
+            trending.ordered(5, 1);
+        }
+        // more distinct products than a sub category summary holds, each seen once
+        for (long id = 100; id < 400; id++) {
+            addProduct(id, PHONES);
+            trending.viewed(id);
+        }
+        trending.drain();
+        assertEquals(5L, (long) trending.getTrending(PHONES, 1).get(0));
+        assertEquals(5L, (long) trending.getTrending(null, 1).get(0));
+        assertEquals(TrendingProducts.MAX_TRENDING, trending.getTrending(PHONES, 100).size());
+    }
+
+    @Test
+    void keepsTheRankingAcrossARescale() {
+        trending.ordered(1, 2);
+        trending.viewed(2);
+        trending.drain();
+        // far enough in the past that the next event overflows the exponent and rescales the summaries
+        double tauMillis = (double) ReflectionTestUtils.getField(trending, "tauMillis");
+        ReflectionTestUtils.setField(trending, "landmark", System.currentTimeMillis() - (long) (tauMillis * 700));
+        trending.viewed(2);
+        trending.drain();
+        // the old events decayed to nothing next to the new view
+        assertEquals(Arrays.asList(2L, 1L), trending.getTrending(null, 10));
+    }
+
+    private void addProduct(long id, long subCategoryId) {
+        catalog.put(id, new Product(id, "product " + id, 10, 1, subCategoryId, 0));
+    }
+
+}
@@ -0,0 +1,43 @@
+package technopolisspring.technopolis.model.pojos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CursorTests {
+
+    @Test
+    void decodesWhatItEncodes() {
+        Cursor cursor = Cursor.decode(new Cursor(19.99, 42).encode());
+        assertEquals(19.99, cursor.getSortKey());
+        assertEquals(42, cursor.getId());
+        assertNull(cursor.getSnapshot());
+    }
+
+    @Test
+    void keepsTheSnapshot() {
+        Cursor cursor = Cursor.decode(new Cursor(3.5, 7, "abc").encode());
+        assertEquals(3.5, cursor.getSortKey());
+        assertEquals(7, cursor.getId());
+        assertEquals("abc", cursor.getSnapshot());
+    }
+
+    @Test
+    void encodesUrlSafely() {
+        String encoded = new Cursor(-1234.5678, Long.MAX_VALUE, "term=1.5,other=2").encode();
+        assertEquals(encoded, encoded.replaceAll("[^A-Za-z0-9_-]", ""));
+    }
+
+    @Test
+    void rejectsForeignCursors() {
+        assertNull(Cursor.decode("not base64!"));
+        assertNull(Cursor.decode(""));
+        assertNull(Cursor.decode(Base64.getUrlEncoder().encodeToString("1.0".getBytes())));
+        assertNull(Cursor.decode(Base64.getUrlEncoder().encodeToString("x:1".getBytes())));
+        assertNull(Cursor.decode(Base64.getUrlEncoder().encodeToString("1:2:3:4".getBytes())));
+    }
+
+}
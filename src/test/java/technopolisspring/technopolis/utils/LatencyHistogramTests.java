@@ -0,0 +1,64 @@
+package technopolisspring.technopolis.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTests {
+
+    @Test
+    void bucketsEveryValueUnderItsUpperBound() {
+        for (long micros = 0; micros < 100000; micros++) {
+            int bucket = LatencyHistogram.bucket(micros);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= micros);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.upperBound(bucket - 1) < micros);
+            }
+        }
+        long largest = Long.MAX_VALUE;
+        assertEquals(largest, LatencyHistogram.upperBound(LatencyHistogram.bucket(largest)));
+    }
+
+    @Test
+    void reportsPercentilesWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(10000, histogram.count());
+        assertEquals(10000, histogram.max());
+        assertWithin(5000, histogram.percentile(50));
+        assertWithin(9900, histogram.percentile(99));
+        assertEquals(10000, histogram.percentile(100));
+    }
+
+    @Test
+    void seesTheTailOfASkewedDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 980; i++) {
+            histogram.record(200);
+        }
+        for (int i = 0; i < 20; i++) {
+            histogram.record(50000);
+        }
+        assertWithin(200, histogram.percentile(50));
+        assertWithin(50000, histogram.percentile(99));
+    }
+
+    @Test
+    void isZeroWithoutSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+        histogram.record(-5);
+        assertEquals(0, histogram.max());
+    }
+
+    // a bucket spans a sixteenth of its doubling
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16 + 1,
+                "expected about " + expected + " but was " + actual);
+    }
+
+}
@@ -0,0 +1,217 @@
+package technopolisspring.technopolis.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import technopolisspring.technopolis.exception.ServiceUnavailableException;
+import technopolisspring.technopolis.model.daos.OrderDao;
+import technopolisspring.technopolis.model.dto.OrderJournalEntryDto;
+import technopolisspring.technopolis.model.dto.OrderStatusDto;
+import technopolisspring.technopolis.model.dto.QueuedOrderDto;
+import technopolisspring.technopolis.model.pojos.IProduct;
+import technopolisspring.technopolis.model.pojos.Order;
+import technopolisspring.technopolis.model.pojos.OrderStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OrderIntakeUtilTests {
+
+    private static final long USER_ID = 3;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @TempDir
+    Path directory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OrderDao orderDao = mock(OrderDao.class);
+    private final AtomicLong nextBlock = new AtomicLong(1);
+    // tickets of every order written, in the order of the writes
+    private final List<Long> written = new CopyOnWriteArrayList<>();
+    private final List<OrderIntakeUtil> started = new ArrayList<>();
+    private Path journal;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        journal = directory.resolve("order-intake.journal");
+        when(orderDao.reserveTickets(anyInt())).thenAnswer(invocation ->
+                nextBlock.getAndAdd(invocation.<Integer>getArgument(0)));
+        when(orderDao.toQueuedOrder(any())).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            return new QueuedOrderDto(0, 0, order.getUserId(), order.getAddress(), order.getPrice(),
+                    new HashMap<>(Collections.singletonMap(5L, 2)));
+        });
+        doAnswer(invocation -> {
+            List<QueuedOrderDto> orders = invocation.getArgument(0);
+            for (QueuedOrderDto order : orders) {
+                written.add(order.getTicket());
+            }
+            return null;
+        }).when(orderDao).addQueuedOrders(anyList());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (OrderIntakeUtil intake : started) {
+            intake.stop();
+        }
+    }
+
+    @Test
+    void replaysTheOrdersLeftOpenByAStop() throws Exception {
+        doThrow(new SQLException("Communications link failure", "08S01")).when(orderDao).addQueuedOrders(anyList());
+        OrderIntakeUtil first = start();
+        long ticket = first.submit(order());
+        assertEquals(1, ticket);
+        assertEquals(OrderStatus.QUEUED, first.getStatus(ticket, USER_ID).getStatus());
+        assertNull(first.getStatus(ticket, USER_ID + 1));
+        first.stop();
+        started.remove(first);
+
+        doAnswer(invocation -> {
+            List<QueuedOrderDto> orders = invocation.getArgument(0);
+            orders.forEach(order -> written.add(order.getTicket()));
+            return null;
+        }).when(orderDao).addQueuedOrders(anyList());
+        OrderIntakeUtil second = start();
+        await(() -> written.contains(ticket));
+        await(() -> second.countQueued() == 0);
+        when(orderDao.getOrderIdsByTickets(Collections.singletonList(ticket)))
+                .thenReturn(Collections.singletonMap(ticket, 77L));
+        when(orderDao.getOrderOwner(77)).thenReturn(USER_ID);
+        OrderStatusDto status = second.getStatus(ticket, USER_ID);
+        assertEquals(OrderStatus.PERSISTED, status.getStatus());
+        assertEquals(77L, (long) status.getOrderId());
+        // the next checkout gets a ticket from a new block, never one handed out before the stop
+        assertTrue(second.submit(order()) > ticket);
+    }
+
+    @Test
+    void skipsClosedAndAlreadyWrittenOrdersOnReplay() throws Exception {
+        long now = System.currentTimeMillis();
+        List<String> lines = new ArrayList<>();
+        lines.add(entry(1, OrderStatus.QUEUED, now));
+        lines.add(entry(2, OrderStatus.QUEUED, now));
+        lines.add(entry(2, OrderStatus.PERSISTED, now));
+        lines.add(entry(3, OrderStatus.QUEUED, now));
+        lines.add(entry(4, OrderStatus.QUEUED, now));
+        lines.add(entry(4, OrderStatus.FAILED, now));
+        // a failure old enough to be dropped
+        lines.add(entry(5, OrderStatus.FAILED, now - TimeUnit.DAYS.toMillis(2)));
+        // cut short by a crash
+        lines.add(entry(6, OrderStatus.QUEUED, now).substring(0, 20));
+        Files.write(journal, lines, StandardCharsets.UTF_8);
+        // written before the crash, but never closed in the journal
+        when(orderDao.getOrderIdsByTickets(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<Long>>getArgument(0).contains(3L) ?
+                        Collections.singletonMap(3L, 30L) : Collections.emptyMap());
+
+        OrderIntakeUtil intake = start();
+        await(() -> written.contains(1L));
+        assertEquals(Collections.singletonList(1L), written);
+        assertEquals(OrderStatus.FAILED, intake.getStatus(4, USER_ID).getStatus());
+        assertNull(intake.getStatus(5, USER_ID));
+        // with nothing open the journal keeps only the failure still within its retention
+        await(() -> readJournal().size() == 1);
+        assertEquals(4, readJournal().get(0).getTicket());
+    }
+
+    @Test
+    void failsOnlyTheOrderThatBreaksAConstraint() throws Exception {
+        CountDownLatch bothQueued = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            bothQueued.await();
+            List<QueuedOrderDto> orders = invocation.getArgument(0);
+            if (orders.stream().anyMatch(order -> order.getTicket() == 2)) {
+                throw new SQLException("Cannot add or update a child row", "23000");
+            }
+            orders.forEach(order -> written.add(order.getTicket()));
+            return null;
+        }).when(orderDao).addQueuedOrders(anyList());
+        OrderIntakeUtil intake = start();
+        long good = intake.submit(order());
+        long bad = intake.submit(order());
+        bothQueued.countDown();
+        await(() -> intake.countQueued() == 0);
+        assertEquals(Collections.singletonList(good), written);
+        assertEquals(OrderStatus.FAILED, intake.getStatus(bad, USER_ID).getStatus());
+        await(() -> readJournal().size() == 1);
+        assertEquals(OrderStatus.FAILED, readJournal().get(0).getStatus());
+    }
+
+    @Test
+    void turnsOrdersAwayWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(orderDao).addQueuedOrders(anyList());
+        OrderIntakeUtil intake = start(2);
+        intake.submit(order());
+        intake.submit(order());
+        assertThrows(ServiceUnavailableException.class, () -> intake.submit(order()));
+        release.countDown();
+        await(() -> intake.countQueued() == 0);
+        intake.submit(order());
+    }
+
+    private OrderIntakeUtil start() throws Exception {
+        return start(100);
+    }
+
+    private OrderIntakeUtil start(int capacity) throws Exception {
+        OrderIntakeUtil intake = new OrderIntakeUtil();
+        ReflectionTestUtils.setField(intake, "orderDao", orderDao);
+        ReflectionTestUtils.setField(intake, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(intake, "capacity", capacity);
+        ReflectionTestUtils.setField(intake, "workers", 1);
+        ReflectionTestUtils.setField(intake, "batchSize", 10);
+        ReflectionTestUtils.setField(intake, "ticketBlock", 10);
+        ReflectionTestUtils.setField(intake, "journalPath", journal.toString());
+        ReflectionTestUtils.setField(intake, "failedRetentionMinutes", 60L);
+        intake.start();
+        started.add(intake);
+        return intake;
+    }
+
+    private Order order() {
+        return new Order(USER_ID, "Sofia", new HashMap<IProduct, Integer>());
+    }
+
+    private String entry(long ticket, OrderStatus status, long time) throws Exception {
+        QueuedOrderDto order = status == OrderStatus.QUEUED ?
+                new QueuedOrderDto(ticket, 0, USER_ID, "Sofia", 10, Collections.singletonMap(5L, 2)) : null;
+        return objectMapper.writeValueAsString(new OrderJournalEntryDto(ticket, status, order, USER_ID, time));
+    }
+
+    private List<OrderJournalEntryDto> readJournal() throws Exception {
+        List<OrderJournalEntryDto> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+            entries.add(objectMapper.readValue(line, OrderJournalEntryDto.class));
+        }
+        return entries;
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.call()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+}